@@ -0,0 +1,87 @@
+package io.lateralus.parsergenerator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the {@link KnuthCloser} and the {@link ChenxCloser}; the creation of the closer, closing all kernels of the
+ * canonical collection and the construction of the canonical collection itself.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CloserBenchmark {
+
+	public enum CloserType {
+		KNUTH,
+		CHENX
+	}
+
+	@Param
+	public GrammarCorpus corpus;
+
+	@Param
+	public CloserType closerType;
+
+	private Grammar grammar;
+
+	private Closer closer;
+
+	private List<Set<Item>> kernels;
+
+	@Setup
+	public void setUp() throws GrammarParserException, GrammarException {
+		grammar = corpus.build();
+		closer = createCloser();
+		kernels = ParserBuilder.createCanonicalCollection(grammar, createCloser()).stream()
+				.map(State::getKernel)
+				.collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public Closer createCloser() {
+		switch (closerType) {
+			case KNUTH:
+				return new KnuthCloser(grammar);
+			case CHENX:
+				return ChenxCloser.builder(grammar).build();
+			default:
+				throw new IllegalStateException("Unknown closer type " + closerType);
+		}
+	}
+
+	/**
+	 * Closes the kernels of all states of the canonical collection with a closer that has been used before.
+	 */
+	@Benchmark
+	public void closeKernels(Blackhole blackhole) {
+		for (Set<Item> kernel : kernels) {
+			blackhole.consume(closer.closure(kernel));
+		}
+	}
+
+	/**
+	 * Creates the canonical collection, including the creation of the closer.
+	 */
+	@Benchmark
+	public Set<State> createCanonicalCollection() {
+		return ParserBuilder.createCanonicalCollection(grammar, createCloser());
+	}
+}
@@ -0,0 +1,53 @@
+package io.lateralus.parsergenerator.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the front of the pipeline; parsing the grammar text and building the {@link Grammar} (which includes
+ * the nullable, first set and suffix calculations).
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GrammarBenchmark {
+
+	@Param
+	public GrammarCorpus corpus;
+
+	private String grammarText;
+
+	private Grammar.Builder builder;
+
+	@Setup
+	public void setUp() throws GrammarParserException {
+		grammarText = corpus.getText();
+		builder = GrammarParser.builderFrom(grammarText);
+	}
+
+	@Benchmark
+	public Grammar.Builder parseGrammar() throws GrammarParserException {
+		return GrammarParser.builderFrom(grammarText);
+	}
+
+	/**
+	 * Builds the grammar from an already parsed builder; building does not change the builder, so it is reused.
+	 */
+	@Benchmark
+	public Grammar buildGrammar() throws GrammarException {
+		return builder.build();
+	}
+}
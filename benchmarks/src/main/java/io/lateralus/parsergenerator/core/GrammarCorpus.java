@@ -0,0 +1,80 @@
+package io.lateralus.parsergenerator.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The grammars on which the generator is benchmarked, from small to "real world" sized. The grammars are stored as
+ * resources in the format of the {@link GrammarParser} and are all LR(1), so a parser can be generated for each of them.
+ * The benchmarks measure the generation only; that the generated parsers compile and parse the sentences of their
+ * grammar is tested by the GeneratedParserTest of the generator, which uses the same resources.
+ */
+public enum GrammarCorpus {
+
+	/**
+	 * Arithmetic expressions with four precedence levels.
+	 */
+	EXPRESSION("expression.grammar"),
+
+	/**
+	 * JSON documents.
+	 */
+	JSON("json.grammar"),
+
+	/**
+	 * A subset of SQL; queries (with joins, sub queries and grouping), inserts, updates and deletes.
+	 */
+	SQL("sql.grammar"),
+
+	/**
+	 * A subset of Java (without generics, lambdas and casts) in the style of the grammar of the Java Language
+	 * Specification.
+	 */
+	JAVA("java.grammar");
+
+	private final String resourceName;
+
+	GrammarCorpus(String resourceName) {
+		this.resourceName = resourceName;
+	}
+
+	/**
+	 * Returns the text of the grammar.
+	 */
+	public String getText() {
+		try (InputStream inputStream = GrammarCorpus.class.getResourceAsStream("/grammars/" + resourceName)) {
+			if (inputStream == null) {
+				throw new IllegalStateException("The grammar " + resourceName + " is missing");
+			}
+			return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read the grammar " + resourceName, e);
+		}
+	}
+
+	/**
+	 * Parses and builds the grammar.
+	 */
+	public Grammar build() throws GrammarParserException, GrammarException {
+		return GrammarParser.builderFrom(getText()).build();
+	}
+
+	/**
+	 * Returns the terminals of the grammar in the order in which the generated parser expects them; EOF followed by
+	 * the other terminals ordered by name.
+	 */
+	public static List<Terminal> orderedTerminals(Grammar grammar) {
+		List<Terminal> orderedTerminals = new ArrayList<>();
+		orderedTerminals.add(Terminal.EOF);
+		grammar.getTerminals().stream()
+				.filter(terminal -> terminal != Terminal.EOF && terminal != Terminal.EPSILON)
+				.sorted(Comparator.comparing(Symbol::getName))
+				.forEach(orderedTerminals::add);
+		return orderedTerminals;
+	}
+}
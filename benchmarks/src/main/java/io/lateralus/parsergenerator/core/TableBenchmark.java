@@ -0,0 +1,69 @@
+package io.lateralus.parsergenerator.core;
+
+import com.google.common.collect.Table;
+import io.lateralus.parsergenerator.codegenerator.CodeGenerationException;
+import io.lateralus.parsergenerator.codegenerator.SourceFile;
+import io.lateralus.parsergenerator.codegenerator.simple.BasicParserCodeGenerator;
+import io.lateralus.parsergenerator.core.definition.ParserDefinition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the back of the pipeline; building the action and goto tables from the canonical collection and
+ * generating the parser from the resulting parser definition.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TableBenchmark {
+
+	@Param
+	public GrammarCorpus corpus;
+
+	private Set<State> canonicalCollection;
+
+	private ParserDefinition parserDefinition;
+
+	private BasicParserCodeGenerator codeGenerator;
+
+	@Setup
+	public void setUp() throws GrammarParserException, GrammarException {
+		Grammar grammar = corpus.build();
+		canonicalCollection = ParserBuilder.createCanonicalCollection(grammar, ChenxCloser.builder(grammar).build());
+		parserDefinition = new ParserDefinition(grammar, ParserBuilder.buildActionTable(canonicalCollection),
+				ParserBuilder.buildGotoTable(canonicalCollection), GrammarCorpus.orderedTerminals(grammar));
+
+		codeGenerator = new BasicParserCodeGenerator();
+		codeGenerator.setProperties(new BasicParserCodeGenerator.Properties("Benchmark", "benchmark.parser",
+				"benchmark.lexer"));
+	}
+
+	@Benchmark
+	public Table<State, Terminal, Action> buildActionTable() {
+		return ParserBuilder.buildActionTable(canonicalCollection);
+	}
+
+	@Benchmark
+	public Table<State, NonTerminal, State> buildGotoTable() {
+		return ParserBuilder.buildGotoTable(canonicalCollection);
+	}
+
+	@Benchmark
+	public Set<SourceFile<String>> generateCode() throws CodeGenerationException {
+		return codeGenerator.generate(parserDefinition);
+	}
+}
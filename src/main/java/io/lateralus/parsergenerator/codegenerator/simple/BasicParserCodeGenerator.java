@@ -1,6 +1,5 @@
 package io.lateralus.parsergenerator.codegenerator.simple;
 
-import com.google.common.collect.Table;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
@@ -14,14 +13,18 @@ import io.lateralus.parsergenerator.core.State;
 import io.lateralus.parsergenerator.core.Symbol;
 import io.lateralus.parsergenerator.core.Terminal;
 import io.lateralus.parsergenerator.core.definition.ParserDefinition;
+import io.lateralus.parsergenerator.core.metrics.GenerationMetrics;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,8 +40,36 @@ import static java.util.function.Predicate.not;
  */
 public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<BasicParserCodeGenerator.Properties, String> {
 
+	/**
+	 * The action base of a consistent state (see {@link ParserDefinition#getDefaultReduction(State)}).
+	 */
+	private static final int CONSISTENT_STATE = -1;
+
+	/**
+	 * The packing of the actions (see {@link #encodeAction}).
+	 */
+	private static final int ACTION_KIND_BITS = 2;
+	private static final int ACTION_KIND_MASK = (1 << ACTION_KIND_BITS) - 1;
+	private static final int SHIFT = 0;
+	private static final int REDUCE = 1;
+	private static final int ACCEPT = 2;
+
+	/**
+	 * The names that can not be used for the fields and constructor parameters of a node; the keywords and literals of
+	 * Java and the names of which the getters would clash with the methods of the nodes.
+	 */
+	private static final Set<String> RESERVED_NAMES = Set.of(
+			"abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+			"default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "goto", "if",
+			"implements", "import", "instanceof", "int", "interface", "long", "native", "new", "package", "private",
+			"protected", "public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+			"throw", "throws", "transient", "try", "void", "volatile", "while", "true", "false", "null", "var", "_",
+			"token", "childCount", "production", "startState", "tokenCount");
+
 	private Properties properties;
 
+	private GenerationMetrics metrics = GenerationMetrics.disabled();
+
 	public BasicParserCodeGenerator() {
 		super(new ClassTemplateLoader(BasicParserCodeGenerator.class, "/templates"));
 	}
@@ -48,94 +79,233 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 		this.properties = properties;
 	}
 
+	/**
+	 * Sets the metrics in which the time that is spent on generating the code is recorded.
+	 */
+	public void setMetrics(GenerationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	@Override
 	public Set<SourceFile<String>> generate(ParserDefinition parserDefinition) throws CodeGenerationException {
-		// Create a Set for the source files.
-		Set<SourceFile<String>> sourceFiles = new HashSet<>();
-
-		sourceFiles.addAll(createNodes(parserDefinition));
-		sourceFiles.addAll(createVisitor(parserDefinition));
-		sourceFiles.addAll(createParser(parserDefinition));
-
-		return sourceFiles;
+		return metrics.time(GenerationMetrics.Phase.CODE_GENERATION, () -> {
+			// Create a Set for the source files.
+			Set<SourceFile<String>> sourceFiles = new HashSet<>();
+			sourceFiles.addAll(createNodes(parserDefinition));
+			sourceFiles.addAll(createVisitor(parserDefinition));
+			sourceFiles.addAll(createParser(parserDefinition));
+			return sourceFiles;
+		});
 	}
 
 	private Set<SourceFile<String>> createParser(ParserDefinition parserDefinition) throws CodeGenerationException {
 		Set<SourceFile<String>> result = new HashSet<>();
 
 		Map<String, Object> model = createBaseModel();
-		result.add(createSourceFile("action.ftl", "Action.java", "", model));
 		result.add(createSourceFile("parser-exception.ftl", "ParserException.java", "", model));
 
-		// Maak een map van State -> Integer
-		// Gooi alle states uit de gotoTable en de actionTable op een hoop en maak daar de map uit.
-		Set<State> states = new HashSet<>(parserDefinition.getActionTable().rowKeySet());
-		states.addAll(parserDefinition.getGotoTable().rowKeySet());
-		states.addAll(parserDefinition.getGotoTable().values());
-
-		List<State> stateList = new ArrayList<>(states);
-		Map<State, Integer> stateIntegerMap = new HashMap<>();
-		for (int i = 0; i < stateList.size(); i++) {
-			stateIntegerMap.put(stateList.get(i), i);
+		addParseTables(parserDefinition, model);
+		addNodeProductions(parserDefinition, model);
+		result.add(createSourceFile("parse-listener.ftl", "ParseListener.java", "", model));
+		model.put("flatTree", properties.isFlatTree());
+		if (properties.isFlatTree()) {
+			result.add(createSourceFile("flat-tree.ftl", "FlatTree.java", "", model));
+			result.add(createSourceFile("flat-tree-visitor.ftl", "FlatTreeVisitor.java", "visitor", model));
 		}
-
-		String actionTableJava = createActionTableJava(parserDefinition, stateList, stateIntegerMap);
-		model.put("actionTableJava", actionTableJava);
 		result.add(createSourceFile("parser.ftl", "Parser.java", "", model));
 
 		return result;
 	}
 
-	private String createActionTableJava(ParserDefinition parserDefinition, List<State> stateList, Map<State, Integer> stateIntegerMap) {
+	/**
+	 * Adds the productions that create a node (which are the kinds of the nodes of the flat tree and have a callback in
+	 * the parse listener) and the cases of the unit productions, which do not create a node, to the model.
+	 */
+	private void addNodeProductions(ParserDefinition parserDefinition, Map<String, Object> model) {
+		List<NodeProduction> nodeProductions = new ArrayList<>();
+		StringBuilder unitProductionCases = new StringBuilder();
+		parserDefinition.getGrammar().getProductions().stream()
+				.sorted(Comparator.comparingInt(Production::getId))
+				.forEach(production -> {
+					if (production.isAbstract()) {
+						unitProductionCases.append("\t\t\tcase ").append(production.getId()).append(":\n");
+					} else {
+						nodeProductions.add(new NodeProduction(production.getId(), determineClassName(production)));
+					}
+				});
+		model.put("nodeProductions", nodeProductions);
+		model.put("nodeProductionTypes", nodeProductions.stream()
+				.map(NodeProduction::getClassName)
+				.distinct()
+				.collect(Collectors.toList()));
+		model.put("unitProductionCasesJava", unitProductionCases.toString());
+	}
 
-		Table<State, Terminal, Action> actionTable = parserDefinition.getActionTable();
-		List<Terminal> terminalList = parserDefinition.getOrderedTerminalList();
+	/**
+	 * Adds the compressed action and goto tables (see {@link CompressedTable}) and the tables of the productions to the
+	 * model.
+	 *
+	 * The actions are packed into ints (see {@link #encodeAction}); the default of a state is the reduction that is
+	 * most common in the state, as in yacc. The goto table is only consulted for the non-terminals that a state has a
+	 * transition on, so any target state can be the default; the most common one is. Unlike yacc the goto table is not
+	 * compressed per non-terminal, since the canonical LR(1) collection splits states; their goto rows are identical
+	 * and are shared, while the columns of a non-terminal hardly ever are.
+	 */
+	private void addParseTables(ParserDefinition parserDefinition, Map<String, Object> model) {
+		List<State> states = parserDefinition.getStates();
+		List<Terminal> terminals = parserDefinition.getOrderedTerminalList();
+		List<NonTerminal> nonTerminals = new ArrayList<>(parserDefinition.getGrammar().getNonTerminals());
+		List<Production> productions = parserDefinition.getGrammar().getProductions().stream()
+				.sorted(Comparator.comparingInt(Production::getId))
+				.collect(Collectors.toList());
 
-		StringBuilder builder = new StringBuilder("new Action[][] { ");
-		for (int i = 0; i < stateList.size(); i++) {
-			State state = stateList.get(i);
-			builder.append("{");
-			for (int j = 0; j < terminalList.size(); j++) {
-				Terminal terminal = terminalList.get(j);
-				Action action = actionTable.get(state, terminal);
-				if (action == null) {
-					builder.append("null");
-				} else {
-					switch (action.getActionType()) {
-						case SHIFT:
-							int stateInt = stateIntegerMap.get(action.getState());
-							builder.append("Action.shift(").append(stateInt).append(")");
-							break;
-						case REDUCE:
-							String nodeName = action.getProduction().getNodeName();
-							if (nodeName == null) {
-								nodeName = action.getProduction().getLhs().getName();
-							}
-							if (action.getProduction().getRhs().size() == 1 && !action.getProduction().getRhs().get(0).isTerminal()) {
-								builder.append("Action.reduce(items -> (").append(nodeName).append("Node)items[0], 2, 2)");
-							} else {
-								builder.append("Action.reduce(items -> new ").append(nodeName).append("Node(null), 2, 2)");
-							}
-							break;
-						case ACCEPT:
-							builder.append("Action.accept()");
-							break;
-					}
-				}
-				if (j != terminalList.size() - 1) {
-					builder.append(",");
-				}
+		int[][] actionRows = new int[states.size()][terminals.size()];
+		for (int i = 0; i < states.size(); i++) {
+			for (int j = 0; j < terminals.size(); j++) {
+				Action action = parserDefinition.getActionTable().get(states.get(i), terminals.get(j));
+				actionRows[i][j] = action == null ? CompressedTable.NO_VALUE : encodeAction(parserDefinition, action);
+			}
+		}
+
+		int[][] gotoRows = new int[states.size()][nonTerminals.size()];
+		for (int i = 0; i < states.size(); i++) {
+			for (int j = 0; j < nonTerminals.size(); j++) {
+				State target = parserDefinition.getGotoTable().get(states.get(i), nonTerminals.get(j));
+				gotoRows[i][j] = target == null ? CompressedTable.NO_VALUE : parserDefinition.getStateNumber(target);
 			}
-			builder.append("}");
-			if (i != stateList.size() - 1) {
-				builder.append(",\n");
+		}
+
+		CompressedTable actionTable = CompressedTable.compress(actionRows, terminals.size(),
+				action -> (action & ACTION_KIND_MASK) == REDUCE);
+		CompressedTable gotoTable = CompressedTable.compress(gotoRows, nonTerminals.size(), state -> true);
+
+		// The row of a consistent state consists of its default reduction only, so its base is never used. Instead
+		// it is marked as consistent, so that the parser reduces it without fetching the next token.
+		int[] actionBase = actionTable.getBase().clone();
+		for (int i = 0; i < states.size(); i++) {
+			if (parserDefinition.getDefaultReduction(states.get(i)) != null) {
+				actionBase[i] = CONSISTENT_STATE;
 			}
 		}
 
-		builder.append("}");
+		int[] rhsSizes = new int[productions.size()];
+		int[] lhsColumns = new int[productions.size()];
+		for (Production production : productions) {
+			rhsSizes[production.getId()] = production.getRhs().contains(Terminal.EPSILON) ? 0 : production.getRhs().size();
+			lhsColumns[production.getId()] = nonTerminals.indexOf(production.getLhs());
+		}
+
+		model.put("actionBaseJava", createIntArrayJava(actionBase));
+		model.put("actionCheckJava", createIntArrayJava(actionTable.getCheck()));
+		model.put("actionTableJava", createIntArrayJava(actionTable.getTable()));
+		model.put("actionDefaultJava", createIntArrayJava(actionTable.getDefaults()));
+		model.put("gotoBaseJava", createIntArrayJava(gotoTable.getBase()));
+		model.put("gotoCheckJava", createIntArrayJava(gotoTable.getCheck()));
+		model.put("gotoTableJava", createIntArrayJava(gotoTable.getTable()));
+		model.put("gotoDefaultJava", createIntArrayJava(gotoTable.getDefaults()));
+		model.put("rhsSizesJava", createIntArrayJava(rhsSizes));
+		model.put("lhsColumnsJava", createIntArrayJava(lhsColumns));
+		model.put("reductionCasesJava", createReductionCasesJava(parserDefinition.getGrammar(), productions));
+	}
+
+	/**
+	 * Packs an action into an int. The lowest two bits hold the kind of the action and the other bits the target state
+	 * of a shift or the production (by id) of a reduction. The error action (-1, like the empty entries of the
+	 * compressed tables) has kind 3. The generated parser defines the same constants.
+	 */
+	private static int encodeAction(ParserDefinition parserDefinition, Action action) {
+		switch (action.getActionType()) {
+			case SHIFT:
+				return parserDefinition.getStateNumber(action.getState()) << ACTION_KIND_BITS | SHIFT;
+			case REDUCE:
+				return action.getProduction().getId() << ACTION_KIND_BITS | REDUCE;
+			case ACCEPT:
+				return ACCEPT;
+			default:
+				throw new IllegalStateException("Unknown action type " + action.getActionType());
+		}
+	}
+
+	/**
+	 * Creates the cases of the switch (on the production id) of the reduce method of the parser. Every case creates
+	 * the node of its production with the typed values of the rhs, which are on the value stack from index first, and
+	 * tracks how it was parsed. A unit production passes the node of its rhs on. Productions with the same code share their case.
+	 */
+	private String createReductionCasesJava(Grammar grammar, List<Production> productions) {
+		Map<NonTerminal, String> valueTypes = determineValueTypes(grammar, determineBaseNonTerminals(grammar));
+		Map<String, List<Integer>> productionsByCode = new LinkedHashMap<>();
+		for (Production production : productions) {
+			productionsByCode.computeIfAbsent(createReductionJava(production, valueTypes), code -> new ArrayList<>())
+					.add(production.getId());
+		}
+
+		StringBuilder builder = new StringBuilder();
+		productionsByCode.forEach((code, ids) -> {
+			for (int id : ids) {
+				builder.append("\t\t\tcase ").append(id).append(":\n");
+			}
+			builder.append("\t\t\t\treturn ").append(code).append(";\n");
+		});
 		return builder.toString();
 	}
 
+	private String createReductionJava(Production production, Map<NonTerminal, String> valueTypes) {
+		if (production.isAbstract()) {
+			return "valueStack[first]";
+		}
+
+		List<Parameter> parameters = determineParameters(production, valueTypes);
+		StringBuilder builder = new StringBuilder("track(new ").append(determineClassName(production)).append("(");
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append('(').append(parameters.get(i).getType()).append(")valueStack[first");
+			if (i > 0) {
+				builder.append(" + ").append(i);
+			}
+			builder.append(']');
+		}
+		return builder.append("), production, first)").toString();
+	}
+
+	/**
+	 * Creates the Java code for an int array. Large array initializers do not fit in the 64KB of byte code of a static
+	 * initializer, so (like JFlex does) the array is packed into string constants that are unpacked by the generated
+	 * parser. Every value v is stored as v + 1 (so -1 becomes 0), in one char if it is smaller than 0x8000 and otherwise
+	 * in two chars, of which the first has its high bit set. A string constant can hold at most 65535 bytes (in modified
+	 * UTF-8), so long arrays are split over multiple strings.
+	 */
+	private static String createIntArrayJava(int[] array) {
+		List<String> chunks = new ArrayList<>();
+		StringBuilder chunk = new StringBuilder();
+		int chunkBytes = 0;
+		for (int value : array) {
+			int stored = value + 1;
+			char[] chars = stored < 0x8000
+					? new char[] { (char)stored }
+					: new char[] { (char)(0x8000 | stored >>> 16), (char)stored };
+			for (char c : chars) {
+				chunkBytes += c == 0 || c >= 0x80 ? (c >= 0x800 ? 3 : 2) : 1;
+				if (c >= 0x20 && c < 0x7F && c != '"' && c != '\\') {
+					chunk.append(c);
+				} else if (c < 0x100) {
+					// Octal escapes, since unicode escapes of line terminators and quotes are not allowed in a literal.
+					chunk.append(String.format("\\%03o", (int)c));
+				} else {
+					chunk.append(String.format("\\u%04x", (int)c));
+				}
+			}
+			if (chunkBytes > 65000) {
+				chunks.add(chunk.toString());
+				chunk.setLength(0);
+				chunkBytes = 0;
+			}
+		}
+		chunks.add(chunk.toString());
+		return "unpack(" + array.length + ", \"" + String.join("\",\n\t\t\t\"", chunks) + "\")";
+	}
+
 	private Set<SourceFile<String>> createNodes(ParserDefinition parserDefinition) throws CodeGenerationException {
 		Set<SourceFile<String>> result = new HashSet<>();
 
@@ -171,6 +341,7 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 		return createNodeDefinitions(parserDefinition).stream()
 				.filter(not(Node::getIsAbstract))
 				.map(Node::getClassName)
+				.sorted()
 				.collect(Collectors.toList());
 	}
 
@@ -206,46 +377,31 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 
 	private Set<Node> createNodeDefinitions(ParserDefinition parserDefinition) {
 		Grammar grammar = parserDefinition.getGrammar();
-		Collection<Production> productions = grammar.getProductions();
+		Map<NonTerminal, NonTerminal> baseNonTerminals = determineBaseNonTerminals(grammar);
+		Map<NonTerminal, String> valueTypes = determineValueTypes(grammar, baseNonTerminals);
 
 		Set<Node> nodes = new HashSet<>();
 
 		for (NonTerminal nonTerminal : grammar.getNonTerminals()) {
-			Set<Production> nonTerminalProductions = grammar.getProductions(nonTerminal);
-
-			String baseName = "BaseNode";
-			for (Production production : productions) {
-				if (production.getRhs().size() == 1
-						&& production.getRhs().get(0) == nonTerminal) {
-					baseName = production.getNodeName();
-					if (baseName == null) {
-						baseName = production.getLhs().getName();
-					}
-					baseName += "Node";
-					break;
-				}
-			}
+			NonTerminal baseNonTerminal = baseNonTerminals.get(nonTerminal);
+			String baseName = baseNonTerminal == null ? "BaseNode" : baseNonTerminal.getName() + "Node";
 
 			// Voeg eerst een abstracte node toe met de naam van de NonTerminal.
 			nodes.add(new Node(nonTerminal.getName() + "Node", baseName, true, false, null, null));
 			baseName = nonTerminal.getName() + "Node";
 
 			// Voeg voor elke een productie bij deze non-terminal een node toe.
-			for (Production production : nonTerminalProductions) {
-				// Skip producties waarvoor geldt dat de rhs == 1 en rhs(0).isNonTerminal
-				if (production.getRhs().size() == 1 && !production.getRhs().get(0).isTerminal()) {
+			for (Production production : grammar.getProductions(nonTerminal)) {
+				// Skip de unit producties (rhs == 1, rhs(0).isNonTerminal en zonder node naam), die geven de node van
+				// hun rhs door.
+				if (production.isAbstract()) {
 					continue;
 				}
 
-				String nodeName = production.getNodeName();
-				if (nodeName == null) {
-					nodeName = nonTerminal.getName();
-				}
-				nodeName += "Node";
-				List<Parameter> parameterList = determineParameters(production);
-				String firstTokenName = determineFirstTokenName(production);
+				List<Parameter> parameterList = determineParameters(production, valueTypes);
+				String firstTokenName = determineFirstTokenName(parameterList);
 				nodes.add(new Node(
-						nodeName,
+						determineClassName(production),
 						baseName,
 						false,
 						production.isBinary(),
@@ -257,11 +413,103 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 		return nodes;
 	}
 
-	private List<Parameter> determineParameters(Production production) {
+	/**
+	 * Determines the super class of the abstract node of every non-terminal. The abstract node of B extends the one of
+	 * A for a unit production A -> B, so that the node of B can be passed on as a node of A. A class has only one super
+	 * class though. When B is the rhs of the unit productions of several non-terminals, the first one (by production
+	 * id) is chosen, the augmented start production only as a last resort since its node is never a child. A choice
+	 * that would close a cycle of super classes is skipped.
+	 *
+	 * @return Per non-terminal the non-terminal of which the abstract node is its super class, or none if that is
+	 *         BaseNode
+	 */
+	private static Map<NonTerminal, NonTerminal> determineBaseNonTerminals(Grammar grammar) {
+		List<Production> unitProductions = grammar.getProductions().stream()
+				.filter(Production::isAbstract)
+				.sorted(Comparator.comparing((Production production) -> production.getLhs().equals(grammar.getSentenceSymbol()))
+						.thenComparingInt(Production::getId))
+				.collect(Collectors.toList());
+
+		Map<NonTerminal, NonTerminal> result = new HashMap<>();
+		for (Production production : unitProductions) {
+			NonTerminal nonTerminal = (NonTerminal)production.getRhs().get(0);
+			if (result.containsKey(nonTerminal)) {
+				continue;
+			}
+			NonTerminal ancestor = production.getLhs();
+			while (ancestor != null && !ancestor.equals(nonTerminal)) {
+				ancestor = result.get(ancestor);
+			}
+			if (ancestor == null) {
+				result.put(nonTerminal, production.getLhs());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Determines the type of the values of every non-terminal, which is the most specific common super class of the
+	 * nodes that it can produce, directly or through a chain of unit productions. That is not necessarily its own
+	 * abstract node. In the json grammar for example ValueNode extends ElementsNode (for Elements -> Value), so a value
+	 * that is reduced to Root (by Root -> Value) is not a RootNode, and a Root is typed as a BaseNode.
+	 */
+	private static Map<NonTerminal, String> determineValueTypes(Grammar grammar,
+			Map<NonTerminal, NonTerminal> baseNonTerminals) {
+		Map<NonTerminal, String> result = new HashMap<>();
+		for (NonTerminal nonTerminal : grammar.getNonTerminals()) {
+			List<String> commonSuperClasses = null;
+			Set<NonTerminal> visited = new HashSet<>();
+			Deque<NonTerminal> workList = new ArrayDeque<>(List.of(nonTerminal));
+			while (!workList.isEmpty()) {
+				NonTerminal current = workList.pop();
+				if (!visited.add(current)) {
+					continue;
+				}
+				for (Production production : grammar.getProductions(current)) {
+					if (production.isAbstract()) {
+						workList.push((NonTerminal)production.getRhs().get(0));
+						continue;
+					}
+					// The super classes of the node of the production, from the most specific one.
+					List<String> superClasses = new ArrayList<>();
+					superClasses.add(determineClassName(production));
+					for (NonTerminal ancestor = current; ancestor != null; ancestor = baseNonTerminals.get(ancestor)) {
+						superClasses.add(ancestor.getName() + "Node");
+					}
+					superClasses.add("BaseNode");
+					if (commonSuperClasses == null) {
+						commonSuperClasses = superClasses;
+					} else {
+						commonSuperClasses.retainAll(superClasses);
+					}
+				}
+			}
+			result.put(nonTerminal, commonSuperClasses == null ? nonTerminal.getName() + "Node" : commonSuperClasses.get(0));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the name of the class of the node that a production creates.
+	 */
+	private static String determineClassName(Production production) {
+		String nodeName = production.getNodeName();
+		if (nodeName == null) {
+			nodeName = production.getLhs().getName();
+		}
+		return nodeName + "Node";
+	}
+
+	private List<Parameter> determineParameters(Production production, Map<NonTerminal, String> valueTypes) {
 		List<Parameter> result = new ArrayList<>();
+		Set<String> usedNames = new HashSet<>();
 
 		for (int i = 0; i< production.getRhs().size(); i++) {
 			Symbol symbol = production.getRhs().get(i);
+			// An empty production has no values.
+			if (symbol == Terminal.EPSILON) {
+				continue;
+			}
 			String rhsName = production.getRhsNames().get(i);
 			if (rhsName == null) {
 				rhsName = symbol.getName();
@@ -269,24 +517,36 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 			String typeName = "Token";
 			String paramName = upperUnderscoreToLowerCamel(rhsName);
 			if (!symbol.isTerminal()) {
-				typeName = symbol.getName() + "Node";
+				typeName = valueTypes.get((NonTerminal)symbol);
 				paramName = upperCamelToLowerCamel(rhsName);
 			}
-			result.add(new Parameter(paramName, typeName));
+			// The names of the symbols are not necessarily valid Java identifiers (TRUE, CASE), nor unique within the
+			// production (Sum BETWEEN Sum AND Sum).
+			if (RESERVED_NAMES.contains(paramName)) {
+				paramName += symbol.isTerminal() ? "Token" : "Node";
+			}
+			String uniqueName = paramName;
+			for (int suffix = 2; usedNames.contains(uniqueName); suffix++) {
+				uniqueName = paramName + suffix;
+			}
+			usedNames.add(uniqueName);
+			result.add(new Parameter(uniqueName, typeName));
 		}
 
 		return result;
 	}
 
-	private String determineFirstTokenName(Production production) {
-		for (int i = 0; i < production.getRhs().size(); i++) {
-			Symbol symbol = production.getRhs().get(i);
-			if (symbol.isTerminal()) {
-				String rhsName = production.getRhsNames().get(i);
-				return upperUnderscoreToLowerCamel(rhsName != null ? rhsName : symbol.getName());
+	/**
+	 * Returns the expression for the first token of a node; its first token parameter, or else the first token of its
+	 * first node parameter.
+	 */
+	private static String determineFirstTokenName(List<Parameter> parameters) {
+		for (Parameter parameter : parameters) {
+			if (parameter.getType().equals("Token")) {
+				return parameter.getName();
 			}
 		}
-		return production.getRhsNames().get(0) + "Node.getToken()";
+		return parameters.isEmpty() ? "null" : parameters.get(0).getName() + ".getToken()";
 	}
 
 	private static String upperCamelToLowerCamel(String name) {
@@ -305,11 +565,21 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 		final private String parserName;
 		final private String parserPackageName;
 		final private String lexerPackageName;
+		final private boolean flatTree;
 
 		public Properties(String parserName, String parserPackageName, String lexerPackageName) {
+			this(parserName, parserPackageName, lexerPackageName, false);
+		}
+
+		/**
+		 * @param flatTree Whether the parser can also build a flat tree, of which the nodes are stored in primitive
+		 *                 arrays instead of in node objects
+		 */
+		public Properties(String parserName, String parserPackageName, String lexerPackageName, boolean flatTree) {
 			this.parserName = parserName;
 			this.parserPackageName = parserPackageName;
 			this.lexerPackageName = lexerPackageName;
+			this.flatTree = flatTree;
 		}
 
 		public String getParserName() {
@@ -323,6 +593,10 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 		public String getLexerPackageName() {
 			return lexerPackageName;
 		}
+
+		public boolean isFlatTree() {
+			return flatTree;
+		}
 	}
 
 	public static class Node {
@@ -368,6 +642,24 @@ public class BasicParserCodeGenerator extends AbstractFreeMarkerCodeGenerator<Ba
 		}
 	}
 
+	public static class NodeProduction {
+		private final int production;
+		private final String className;
+
+		public NodeProduction(int production, String className) {
+			this.production = production;
+			this.className = className;
+		}
+
+		public int getProduction() {
+			return production;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+	}
+
 	public static class Parameter {
 		private final String name;
 		private final String type;
@@ -0,0 +1,190 @@
+package io.lateralus.parsergenerator.codegenerator.simple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * A two dimensional table of ints that is compressed with row displacement (aka a comb vector), as is done by yacc and
+ * bison.
+ *
+ * Every row has a default value; the most common value in the row that is allowed to be a default. The other entries
+ * of all rows are stored in one shared vector, where every row starts at its own displacement (base) and the rows are
+ * fitted into each other's holes. Next to every entry the vector holds the column of the entry, so a lookup checks
+ * whether the slot belongs to the row and otherwise returns the default of the row:
+ * <pre>
+ * index = base[row] + column
+ * value = check[index] == column ? table[index] : defaults[row]
+ * </pre>
+ * This works because every distinct row has its own displacement; a slot with the right column at base + column can
+ * only belong to the row with that base. Rows with the same entries are stored once and share their displacement. The
+ * vectors are padded, so base + column is always within bounds and a lookup takes two array accesses.
+ */
+final class CompressedTable {
+
+	/**
+	 * The value of an empty entry in the uncompressed table.
+	 */
+	static final int NO_VALUE = -1;
+
+	private final int[] base;
+
+	private final int[] check;
+
+	private final int[] table;
+
+	private final int[] defaults;
+
+	private CompressedTable(int[] base, int[] check, int[] table, int[] defaults) {
+		this.base = base;
+		this.check = check;
+		this.table = table;
+		this.defaults = defaults;
+	}
+
+	/**
+	 * Compresses the table, where every row holds a value (or {@link #NO_VALUE}) for every column.
+	 *
+	 * @param rows The uncompressed table
+	 * @param columnCount The number of columns of the table
+	 * @param defaultCandidate Whether a value may be the default of a row; when none of the values of a row may be
+	 *                         the default, the default of the row is {@link #NO_VALUE}
+	 */
+	static CompressedTable compress(int[][] rows, int columnCount, IntPredicate defaultCandidate) {
+		int[] defaults = new int[rows.length];
+		List<int[]> distinctRows = new ArrayList<>();
+		Map<List<Integer>, Integer> distinctRowIndices = new HashMap<>();
+		int[] rowIndices = new int[rows.length];
+
+		for (int row = 0; row < rows.length; row++) {
+			defaults[row] = determineDefault(rows[row], defaultCandidate);
+
+			// The entries of the row (without the default) as column, value pairs.
+			List<Integer> entries = new ArrayList<>();
+			for (int column = 0; column < columnCount; column++) {
+				int value = rows[row][column];
+				if (value != NO_VALUE && value != defaults[row]) {
+					entries.add(column);
+					entries.add(value);
+				}
+			}
+			rowIndices[row] = distinctRowIndices.computeIfAbsent(entries, e -> {
+				distinctRows.add(e.stream().mapToInt(Integer::intValue).toArray());
+				return distinctRows.size() - 1;
+			});
+		}
+
+		// Fit the rows with the most entries first, those are the hardest to fit.
+		Integer[] order = new Integer[distinctRows.size()];
+		Arrays.setAll(order, i -> i);
+		Arrays.sort(order, Comparator.comparingInt((Integer i) -> -distinctRows.get(i).length).thenComparing(i -> i));
+
+		int[] distinctBase = new int[distinctRows.size()];
+		int[] check = new int[Math.max(16, columnCount)];
+		Arrays.fill(check, NO_VALUE);
+		int[] table = new int[check.length];
+		boolean[] usedBases = new boolean[check.length];
+		int length = 0;
+		// All slots before this one are taken, so the first entry of a row can not be placed before it.
+		int firstFree = 0;
+
+		for (int distinctRow : order) {
+			int[] entries = distinctRows.get(distinctRow);
+			int displacement = entries.length == 0 ? 0 : Math.max(0, firstFree - entries[0]);
+			while (!fits(entries, displacement, check, usedBases)) {
+				displacement++;
+			}
+
+			int requiredLength = displacement + columnCount;
+			if (requiredLength > check.length) {
+				int newLength = Math.max(requiredLength, check.length * 2);
+				check = Arrays.copyOf(check, newLength);
+				Arrays.fill(check, table.length, newLength, NO_VALUE);
+				table = Arrays.copyOf(table, newLength);
+				usedBases = Arrays.copyOf(usedBases, newLength);
+			}
+			for (int i = 0; i < entries.length; i += 2) {
+				check[displacement + entries[i]] = entries[i];
+				table[displacement + entries[i]] = entries[i + 1];
+			}
+			usedBases[displacement] = true;
+			distinctBase[distinctRow] = displacement;
+			length = Math.max(length, requiredLength);
+			while (firstFree < check.length && check[firstFree] != NO_VALUE) {
+				firstFree++;
+			}
+		}
+
+		int[] base = new int[rows.length];
+		for (int row = 0; row < rows.length; row++) {
+			base[row] = distinctBase[rowIndices[row]];
+		}
+		return new CompressedTable(base, Arrays.copyOf(check, length), Arrays.copyOf(table, length), defaults);
+	}
+
+	private static int determineDefault(int[] row, IntPredicate defaultCandidate) {
+		Map<Integer, Integer> counts = new HashMap<>();
+		int result = NO_VALUE;
+		int resultCount = 0;
+		for (int value : row) {
+			if (value == NO_VALUE || !defaultCandidate.test(value)) {
+				continue;
+			}
+			int count = counts.merge(value, 1, Integer::sum);
+			if (count > resultCount || count == resultCount && value < result) {
+				result = value;
+				resultCount = count;
+			}
+		}
+		return result;
+	}
+
+	private static boolean fits(int[] entries, int displacement, int[] check, boolean[] usedBases) {
+		if (displacement < usedBases.length && usedBases[displacement]) {
+			return false;
+		}
+		for (int i = 0; i < entries.length; i += 2) {
+			int index = displacement + entries[i];
+			if (index < check.length && check[index] != NO_VALUE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the value at the given row and column; the value that was in the uncompressed table, or the default of the
+	 * row.
+	 */
+	int get(int row, int column) {
+		int index = base[row] + column;
+		return check[index] == column ? table[index] : defaults[row];
+	}
+
+	int[] getBase() {
+		return base;
+	}
+
+	int[] getCheck() {
+		return check;
+	}
+
+	int[] getTable() {
+		return table;
+	}
+
+	int[] getDefaults() {
+		return defaults;
+	}
+
+	/**
+	 * Returns the number of ints in the compressed table.
+	 */
+	int size() {
+		return base.length + check.length + table.length + defaults.length;
+	}
+}
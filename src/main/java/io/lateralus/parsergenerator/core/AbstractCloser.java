@@ -1,13 +1,11 @@
 package io.lateralus.parsergenerator.core;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.HashMap;
+import io.lateralus.parsergenerator.core.metrics.GenerationMetrics;
+
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static io.lateralus.parsergenerator.core.Terminal.EPSILON;
 
@@ -15,89 +13,170 @@ public abstract class AbstractCloser implements Closer {
 
 	protected final Grammar grammar;
 
+	protected final LookaheadSetFactory lookaheadSetFactory;
+
+	/**
+	 * The closure template per non-terminal (by id), see {@link #createTemplate(int)}. The templates are created on
+	 * first use; when two threads need the same template at the same time both create it, which is harmless.
+	 */
+	private final AtomicReferenceArray<Template> templates;
+
+	private GenerationMetrics metrics = GenerationMetrics.disabled();
+
 	public AbstractCloser(Grammar grammar) {
 		this.grammar = grammar;
+		this.lookaheadSetFactory = grammar.getLookaheadSetFactory();
+		this.templates = new AtomicReferenceArray<>(grammar.getNonTerminalCount());
 	}
 
+	/**
+	 * Sets the metrics in which the closures are recorded. This must be done before the closer is used.
+	 */
+	public void setMetrics(GenerationMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Calculates the closure of the kernel by instantiating the template of the expected non-terminal of every kernel
+	 * item. The lookahead of a template item is its spontaneous lookahead, plus (if the item propagates) the lookahead
+	 * that the kernel item passes on to the productions of the expected non-terminal. This way the cost of a closure is
+	 * proportional to the size of the kernel and {@link #determineLookahead} is only called for the kernel items.
+	 *
+	 * The items are handled as int encoded LR(0) items (see {@link Grammar#lr0Item}); only the resulting closure is
+	 * turned into {@link Item}s.
+	 */
 	@Override
-	public Set<Item> closure(Set<Item> items) {
-		Map<LR0Item, Set<Terminal>> closure = new HashMap<>();
-		Deque<LR0Item> workList = new ArrayDeque<>();
-		for (Item item : items) {
-			LR0Item lr0Item = new LR0Item(item);
-			workList.add(lr0Item);
-			closure.put(lr0Item, item.getLookahead());
+	public Set<Item> closure(Set<Item> kernel) {
+		ClosureSet closure = new ClosureSet(lookaheadSetFactory, kernel.size() * 4);
+		for (Item item : kernel) {
+			closure.add(grammar.lr0Item(item.getProduction(), item.getPosition()), item.getLookahead());
 		}
 
-		while (!workList.isEmpty()) {
-			LR0Item lr0item = workList.pop();
-			Symbol expectedSymbol = lr0item.getExpectedSymbol();
-
-			// If there is an expected symbol (i.e. the dot pointer is before the last symbol in the rhs of the rule)
-			// and the symbol is non-terminal we must add items for all production / lookahead combinations to our
-			// closure. Note that we add it to the work list here, so that if the first symbol of the rhs is a
-			// non-terminal we recursively close over them as well.
-			if (expectedSymbol == null || expectedSymbol.isTerminal()) {
+		int kernelSize = closure.size();
+		for (int i = 0; i < kernelSize; i++) {
+			int lr0Item = closure.getItem(i);
+			int expectedSymbol = grammar.getExpectedSymbol(lr0Item);
+			if (expectedSymbol < grammar.getTerminalCount()) {
+				// Either there is no expected symbol (-1) or it is a terminal.
 				continue;
 			}
 
-			Set<Terminal> lookaheadSet = determineLookahead(lr0item.production, closure.get(lr0item), lr0item.position);
-			Set<Production> productions = grammar.getProductions((NonTerminal)expectedSymbol);
-			for (Production production : productions) {
-				LR0Item newItem = new LR0Item(production, 0);
-				boolean isNew = !closure.containsKey(newItem);
-				Set<Terminal> currentLookaheadSet = closure.computeIfAbsent(newItem, item -> new HashSet<>());
-				if (currentLookaheadSet.addAll(lookaheadSet) || isNew) {
-					workList.add(newItem);
-				}
+			LookaheadSet lookaheadSet = determineLookahead(lr0Item, closure.getLookaheadAt(i));
+			Template template = getTemplate(expectedSymbol);
+			for (int j = 0; j < template.items.length; j++) {
+				LookaheadSet itemLookaheadSet = template.propagates[j]
+						? lookaheadSetFactory.union(template.spontaneousLookaheads[j], lookaheadSet)
+						: template.spontaneousLookaheads[j];
+				closure.add(template.items[j], itemLookaheadSet);
 			}
 		}
 
-		return closure.entrySet().stream()
-				.map(entry -> new Item(entry.getKey().production, entry.getValue(), entry.getKey().position))
-				.collect(Collectors.toSet());
+		metrics.recordClosure(closure.size());
+		return toItems(closure);
 	}
 
-	protected abstract Set<Terminal> determineLookahead(Production production, Set<Terminal> lookahead, int position);
-
-	private static class LR0Item {
-		private final Production production;
-		private final int position;
-
-		public LR0Item(Production production, int position) {
-			this.production = production;
-			this.position = position;
+	private Template getTemplate(int symbolIndex) {
+		int id = symbolIndex - grammar.getTerminalCount();
+		Template template = templates.get(id);
+		if (template == null) {
+			template = createTemplate(symbolIndex);
+			templates.set(id, template);
 		}
+		return template;
+	}
 
-		private LR0Item(Item item) {
-			this.production = item.getProduction();
-			this.position = item.getPosition();
+	/**
+	 * Creates the closure template of a non-terminal; the LR(0) closure of all productions of the non-terminal.
+	 *
+	 * The template is calculated by closing over the productions of the non-terminal with EPSILON as lookahead. Since
+	 * EPSILON can never be a real lookahead, it marks the items to which the lookahead of the "parent" item propagates.
+	 * All other terminals in the lookahead of an item are spontaneous; they are generated within the template itself.
+	 */
+	private Template createTemplate(int symbolIndex) {
+		int[] startItems = grammar.getStartItems(symbolIndex);
+		ClosureSet closure = new ClosureSet(lookaheadSetFactory, startItems.length * 4);
+		LookaheadSet propagated = lookaheadSetFactory.of(EPSILON);
+		for (int startItem : startItems) {
+			closure.add(startItem, propagated);
 		}
-
-		@Override
-		public boolean equals(Object o) {
-			if (this == o) return true;
-			if (o == null || getClass() != o.getClass()) return false;
-			LR0Item that = (LR0Item) o;
-			return position == that.position &&
-					production.equals(that.production);
+		close(closure);
+
+		int size = closure.size();
+		int[] items = new int[size];
+		LookaheadSet[] spontaneousLookaheads = new LookaheadSet[size];
+		boolean[] propagates = new boolean[size];
+		for (int i = 0; i < size; i++) {
+			LookaheadSet lookahead = closure.getLookaheadAt(i);
+			items[i] = closure.getItem(i);
+			spontaneousLookaheads[i] = lookaheadSetFactory.remove(lookahead, EPSILON);
+			propagates[i] = lookahead.containsIndex(LookaheadSetFactory.EPSILON_INDEX);
 		}
+		return new Template(items, spontaneousLookaheads, propagates);
+	}
 
-		@Override
-		public int hashCode() {
-			return Objects.hash(production, position);
+	/**
+	 * Closes the given items (in place) by repeatedly adding the productions of expected non-terminals until nothing
+	 * changes anymore.
+	 */
+	private void close(ClosureSet closure) {
+		int[] workList = new int[Math.max(16, closure.size())];
+		int workListSize = 0;
+		for (int i = 0; i < closure.size(); i++) {
+			workList[workListSize++] = closure.getItem(i);
 		}
 
-		public Symbol getExpectedSymbol() {
-			if (production.getRhs().size() == position) {
-				return null;
+		while (workListSize > 0) {
+			int lr0Item = workList[--workListSize];
+			int expectedSymbol = grammar.getExpectedSymbol(lr0Item);
+
+			// If there is an expected symbol (i.e. the dot pointer is before the last symbol in the rhs of the rule)
+			// and the symbol is non-terminal we must add items for all production / lookahead combinations to our
+			// closure. Note that we add it to the work list here, so that if the first symbol of the rhs is a
+			// non-terminal we recursively close over them as well.
+			if (expectedSymbol < grammar.getTerminalCount()) {
+				continue;
 			}
-			Symbol expectedSymbol = production.getRhs().get(position);
-			// Don't return EPSILON, since it is not a real non-terminal; the lexer will never return an "epsilon" token.
-			if (expectedSymbol == EPSILON) {
-				return null;
+
+			LookaheadSet lookaheadSet = determineLookahead(lr0Item, closure.getLookahead(lr0Item));
+			for (int newItem : grammar.getStartItems(expectedSymbol)) {
+				if (closure.add(newItem, lookaheadSet)) {
+					if (workListSize == workList.length) {
+						workList = Arrays.copyOf(workList, workListSize * 2);
+					}
+					workList[workListSize++] = newItem;
+				}
 			}
-			return expectedSymbol;
+		}
+	}
+
+	private Set<Item> toItems(ClosureSet closure) {
+		Set<Item> items = new HashSet<>();
+		for (int i = 0; i < closure.size(); i++) {
+			int lr0Item = closure.getItem(i);
+			items.add(new Item(grammar.getProduction(lr0Item), closure.getLookaheadAt(i), grammar.getPosition(lr0Item)));
+		}
+		return items;
+	}
+
+	/**
+	 * Determines the lookahead that the item (encoded as int, see {@link Grammar#lr0Item}) with the given lookahead
+	 * passes on to the productions of its expected non-terminal.
+	 */
+	protected abstract LookaheadSet determineLookahead(int lr0Item, LookaheadSet lookahead);
+
+	/**
+	 * The closure template of a non-terminal; per LR(0) item its spontaneous lookahead and whether the lookahead of the
+	 * "parent" item propagates to it.
+	 */
+	private static class Template {
+		private final int[] items;
+		private final LookaheadSet[] spontaneousLookaheads;
+		private final boolean[] propagates;
+
+		private Template(int[] items, LookaheadSet[] spontaneousLookaheads, boolean[] propagates) {
+			this.items = items;
+			this.spontaneousLookaheads = spontaneousLookaheads;
+			this.propagates = propagates;
 		}
 	}
 }
@@ -1,95 +1,47 @@
 package io.lateralus.parsergenerator.core;
 
-import java.util.HashMap;
+import io.lateralus.parsergenerator.core.metrics.GenerationMetrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static io.lateralus.parsergenerator.core.Terminal.EPSILON;
-import static java.util.function.Predicate.not;
 
 /**
  * Calculates the closure as discussed in the dissertation of Xin Chen (Measuring and extending LR(1) parser generation)
  */
 public class ChenxCloser extends AbstractCloser {
 
-	private final Map<Symbol, Boolean> canVanishMap;
+	/**
+	 * The terminal heads (without EPSILON) of the production suffix after the dot pointer of every LR(0) item (see
+	 * {@link Grammar#lr0Item}).
+	 */
+	private final LookaheadSet[] suffixTHeads;
+
+	/**
+	 * Whether the lookahead of an item propagates through every production suffix, indexed as above.
+	 */
+	private final boolean[] propagatingSuffixes;
 
-	private ChenxCloser(Grammar grammar, Map<Symbol, Boolean> canVanishMap) {
+	private ChenxCloser(Grammar grammar, LookaheadSet[] suffixTHeads, boolean[] propagatingSuffixes) {
 		super(grammar);
-		this.canVanishMap = canVanishMap;
+		this.suffixTHeads = suffixTHeads;
+		this.propagatingSuffixes = propagatingSuffixes;
 	}
 
 	@Override
-	protected Set<Terminal> determineLookahead(Production production, Set<Terminal> lookahead, int position) {
-		int nextPosition = position + 1;
-		List<Symbol> rhs = production.getRhs();
-
-		// If the next position is equal to the length of the rhs the lookahead is the lookahead of the item.
-		if (nextPosition == rhs.size()) {
-			return lookahead;
-		}
-
-		List<Symbol> remainingSymbols = rhs.subList(nextPosition, rhs.size());
-		Set<Terminal> tHeads = determineTHeads(remainingSymbols);
+	protected LookaheadSet determineLookahead(int lr0Item, LookaheadSet lookahead) {
+		// The suffix after the expected symbol is the suffix of the next item.
+		int nextItem = lr0Item + 1;
 
-		if (tHeads.isEmpty()) {
-			return lookahead;
+		if (propagatingSuffixes[nextItem]) {
+			return lookaheadSetFactory.union(suffixTHeads[nextItem], lookahead);
 		}
 
-		if (tHeads.remove(EPSILON)) {
-			tHeads.addAll(lookahead);
-		}
-
-		return tHeads;
-	}
-
-	private Set<Terminal> determineTHeads(List<Symbol> remainingSymbols) {
-		Set<Terminal> tHeads = new HashSet<>();
-		Set<NonTerminal> heads = new HashSet<>();
-
-		insertAlphaToHeads(remainingSymbols, heads, tHeads);
-
-		for (NonTerminal nonTerminal : heads) {
-			Set<Production> productions = grammar.getProductions(nonTerminal);
-			for (Production production : productions) {
-				List<Symbol> rhs = production.getRhs();
-				if (rhs.size() == 1 && rhs.contains(EPSILON)) {
-					continue;
-				}
-				insertStringToHeads(production.getRhs(), heads, tHeads);
-			}
-		}
-		return tHeads;
-	}
-
-	private void insertAlphaToHeads(List<Symbol> string, Set<NonTerminal> heads, Set<Terminal> tHeads) {
-		if (insertStringToHeads(string, heads, tHeads)) {
-			tHeads.add(EPSILON);
-		}
-	}
-
-	private boolean insertStringToHeads(List<Symbol> string, Set<NonTerminal> heads, Set<Terminal> tHeads) {
-		for (Symbol symbol : string) {
-			if (canVanish(symbol)) {
-				heads.add((NonTerminal)symbol);
-				continue;
-			}
-			if (symbol.isTerminal()) {
-				tHeads.add((Terminal)symbol);
-			} else {
-				heads.add((NonTerminal)symbol);
-			}
-			return false;
-		}
-		return true;
-	}
-
-	private boolean canVanish(Symbol symbol) {
-		Boolean value = canVanishMap.get(symbol);
-		return value != null && value;
+		return suffixTHeads[nextItem];
 	}
 
 	public static Builder builder(Grammar grammar) {
@@ -100,52 +52,88 @@ public class ChenxCloser extends AbstractCloser {
 
 		private final Grammar grammar;
 
-		Map<Symbol, Boolean> canVanishMap = new HashMap<>();
+		private GenerationMetrics metrics = GenerationMetrics.disabled();
 
 		public Builder(Grammar grammar) {
 			this.grammar = grammar;
 		}
 
+		/**
+		 * Sets the metrics in which the precomputation of the closer and the closures of the built closer are recorded.
+		 */
+		public Builder metrics(GenerationMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
 		public ChenxCloser build() {
-			fillCanVanishMap();
-			return new ChenxCloser(grammar, canVanishMap);
+			ChenxCloser closer = metrics.time(GenerationMetrics.Phase.CLOSER, this::createCloser);
+			closer.setMetrics(metrics);
+			return closer;
 		}
 
-		private void fillCanVanishMap() {
-			grammar.getTerminals()
-					.forEach(terminal -> canVanishMap.put(terminal, false));
-			canVanishMap.put(EPSILON, true);
-
-			boolean newFound = true;
-			while(newFound) {
-				newFound = false;
-
-				Set<NonTerminal> nonTerminals = getNonVanishableNonTerminals();
-				for (NonTerminal lhs : nonTerminals) {
-					for (Production production : grammar.getProductions(lhs)) {
-						if (canVanish(production.getRhs())) {
-							canVanishMap.put(lhs, true);
-							newFound = true;
-						}
-					}
+		private ChenxCloser createCloser() {
+			// Determine the THeads of every production suffix once, so that the closer only has to look them up.
+			LookaheadSetFactory lookaheadSetFactory = grammar.getLookaheadSetFactory();
+			LookaheadSet[] suffixTHeads = new LookaheadSet[grammar.getLr0ItemCount()];
+			boolean[] propagatingSuffixes = new boolean[grammar.getLr0ItemCount()];
+			for (Production production : grammar.getProductions()) {
+				List<Symbol> rhs = production.getRhs();
+				for (int position = 0; position <= rhs.size(); position++) {
+					int lr0Item = grammar.lr0Item(production, position);
+					Set<Terminal> tHeads = determineTHeads(rhs.subList(position, rhs.size()));
+					// If there are no THeads the lookahead of the item is the lookahead for the closure items.
+					propagatingSuffixes[lr0Item] = tHeads.remove(EPSILON) || tHeads.isEmpty();
+					suffixTHeads[lr0Item] = lookaheadSetFactory.of(tHeads);
 				}
 			}
+
+			return new ChenxCloser(grammar, suffixTHeads, propagatingSuffixes);
 		}
 
-		private Set<NonTerminal> getNonVanishableNonTerminals() {
-			return grammar.getNonTerminals().stream()
-					.filter(not(this::canVanish))
-					.collect(Collectors.toSet());
+		private Set<Terminal> determineTHeads(List<Symbol> remainingSymbols) {
+			Set<Terminal> tHeads = new HashSet<>();
+			Set<NonTerminal> heads = new HashSet<>();
+			Deque<NonTerminal> workList = new ArrayDeque<>();
+
+			if (insertStringToHeads(remainingSymbols, heads, workList, tHeads)) {
+				tHeads.add(EPSILON);
+			}
+
+			while (!workList.isEmpty()) {
+				for (Production production : grammar.getProductions(workList.pop())) {
+					List<Symbol> rhs = production.getRhs();
+					if (rhs.size() == 1 && rhs.contains(EPSILON)) {
+						continue;
+					}
+					insertStringToHeads(rhs, heads, workList, tHeads);
+				}
+			}
+			return tHeads;
 		}
 
-		private boolean canVanish(List<Symbol> string) {
-			return string.stream()
-					.allMatch(this::canVanish);
+		private boolean insertStringToHeads(List<Symbol> string, Set<NonTerminal> heads, Deque<NonTerminal> workList,
+		                                    Set<Terminal> tHeads) {
+			for (Symbol symbol : string) {
+				if (symbol.isTerminal()) {
+					if (canVanish(symbol)) {
+						continue;
+					}
+					tHeads.add((Terminal)symbol);
+					return false;
+				}
+				if (heads.add((NonTerminal)symbol)) {
+					workList.add((NonTerminal)symbol);
+				}
+				if (!canVanish(symbol)) {
+					return false;
+				}
+			}
+			return true;
 		}
 
 		private boolean canVanish(Symbol symbol) {
-			Boolean value = canVanishMap.get(symbol);
-			return value != null && value;
+			return grammar.isNullable(symbol);
 		}
 	}
 }
@@ -1,120 +1,111 @@
 package io.lateralus.parsergenerator.core;
 
-import com.google.common.collect.Sets;
+import java.util.Arrays;
 
-import java.util.AbstractCollection;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+/**
+ * The LR(0) items (encoded as int, see {@link Grammar#lr0Item}) of a closure that is being calculated, together with
+ * their lookahead. Adding the same LR(0) item again merges the lookaheads.
+ *
+ * The items are stored in an open addressing hash table, so no objects are allocated per item. The items are iterated
+ * in the order in which they were added.
+ */
+final class ClosureSet {
 
-class ClosureSet extends AbstractCollection<Item> implements Set<Item> {
+	private static final int EMPTY = -1;
 
-	private static class ItemHandle {
-		private final Production production;
-		private final int position;
+	private final LookaheadSetFactory lookaheadSetFactory;
 
-		private ItemHandle(Item item) {
-			this.production = item.getProduction();
-			this.position = item.getPosition();
-		}
+	/**
+	 * The hash table; per slot the index (in the arrays below) of the item or EMPTY.
+	 */
+	private int[] slots;
 
-		@Override
-		public boolean equals(Object o) {
-			if (this == o) return true;
-			if (o == null || getClass() != o.getClass()) return false;
-			ItemHandle that = (ItemHandle) o;
-			return position == that.position &&
-					production.equals(that.production);
-		}
+	private int[] items;
 
-		@Override
-		public int hashCode() {
-			return Objects.hash(production, position);
-		}
-	}
+	private LookaheadSet[] lookaheads;
 
-	private final Map<ItemHandle, Item> map = new HashMap<>();
+	private int size = 0;
 
-	@Override
-	public int size() {
-		return map.size();
+	ClosureSet(LookaheadSetFactory lookaheadSetFactory, int expectedSize) {
+		this.lookaheadSetFactory = lookaheadSetFactory;
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+		this.slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		this.items = new int[capacity / 2];
+		this.lookaheads = new LookaheadSet[capacity / 2];
 	}
 
-	@Override
-	public boolean contains(Object o) {
-		if (!(o instanceof Item)) {
+	/**
+	 * Adds the item with the given lookahead, or merges the lookahead into the lookahead of the item if it is already
+	 * part of the set.
+	 * @return whether the set changed; i.e. the item is new or its lookahead grew
+	 */
+	boolean add(int item, LookaheadSet lookahead) {
+		int slot = findSlot(item);
+		int index = slots[slot];
+		if (index == EMPTY) {
+			if (size == items.length) {
+				grow();
+				slot = findSlot(item);
+			}
+			slots[slot] = size;
+			items[size] = item;
+			lookaheads[size] = lookahead;
+			size++;
+			return true;
+		}
+
+		LookaheadSet merged = lookaheadSetFactory.union(lookaheads[index], lookahead);
+		if (merged == lookaheads[index]) {
 			return false;
 		}
-		Item item = (Item)o;
-		ItemHandle itemHandle = new ItemHandle(item);
-		return map.containsKey(itemHandle) && map.get(itemHandle).equals(item);
+		lookaheads[index] = merged;
+		return true;
 	}
 
-	@Override
-	public Iterator<Item> iterator() {
-		Iterator<Map.Entry<ItemHandle, Item>> iterator = map.entrySet().iterator();
-		return new Iterator<>() {
-			Map.Entry<ItemHandle, Item> current = null;
-			@Override
-			public boolean hasNext() {
-				return iterator.hasNext();
-			}
-			@Override
-			public Item next() {
-				current = iterator.next();
-				return current.getValue();
-			}
-			@Override
-			public void remove() {
-				map.remove(current.getKey());
-			}
-		};
+	/**
+	 * Returns the lookahead of the item, or null if the item is not part of the set.
+	 */
+	LookaheadSet getLookahead(int item) {
+		int index = slots[findSlot(item)];
+		return index == EMPTY ? null : lookaheads[index];
 	}
 
-	@Override
-	public boolean add(Item item) {
-		ItemHandle itemHandle = new ItemHandle(item);
-		Item oldItem = map.get(itemHandle);
-
-		if (oldItem == null) {
-			map.put(itemHandle, item);
-			return true;
-		} else if (oldItem.getLookahead().containsAll(item.getLookahead())) {
-			return false;
-		} else {
-			Set<Terminal> lookahead = Sets.union(oldItem.getLookahead(), item.getLookahead());
-			Item newItem = new Item(oldItem.getProduction(), lookahead, oldItem.getPosition());
-			map.put(itemHandle, newItem);
-			return true;
-		}
+	int size() {
+		return size;
 	}
 
-	@Override
-	public boolean remove(Object o) {
-		if (!contains(o)) {
-			return false;
-		}
-		map.remove(new ItemHandle((Item)o));
-		return true;
+	/**
+	 * Returns the item that was added as the i-th item.
+	 */
+	int getItem(int i) {
+		return items[i];
 	}
 
-	@Override
-	public void clear() {
-		map.clear();
+	/**
+	 * Returns the lookahead of the item that was added as the i-th item.
+	 */
+	LookaheadSet getLookaheadAt(int i) {
+		return lookaheads[i];
 	}
 
-	@Override
-	public boolean equals(Object o) {
-		if (this == o) return true;
-		if (o == null || getClass() != o.getClass()) return false;
-		ClosureSet that = (ClosureSet) o;
-		return that.map.equals(this.map);
+	private int findSlot(int item) {
+		int mask = slots.length - 1;
+		// Spread the (consecutive) item numbers over the table.
+		int slot = (item * 0x9E3779B9) & mask;
+		while (slots[slot] != EMPTY && items[slots[slot]] != item) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
 	}
 
-	@Override
-	public int hashCode() {
-		return map.hashCode();
+	private void grow() {
+		items = Arrays.copyOf(items, items.length * 2);
+		lookaheads = Arrays.copyOf(lookaheads, lookaheads.length * 2);
+		slots = new int[slots.length * 2];
+		Arrays.fill(slots, EMPTY);
+		for (int i = 0; i < size; i++) {
+			slots[findSlot(items[i])] = i;
+		}
 	}
 }
@@ -0,0 +1,77 @@
+package io.lateralus.parsergenerator.core;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * Implementation of the digraph algorithm of DeRemer and Pennello (Efficient Computation of LALR(1) Look-Ahead Sets).
+ *
+ * Given a set of nodes X, a relation R on X and a function F' that assigns an initial value to every node, the
+ * algorithm computes for every x the smallest F(x) such that F(x) = F'(x) ∪ ⋃{F(y) | x R y}. The strongly connected
+ * components of R are detected while traversing, so every node is visited only once and all nodes in a component end
+ * up sharing the same value.
+ *
+ * The nodes are represented by the integers 0 (inclusive) up to the number of nodes (exclusive).
+ */
+final class Digraph<T> {
+
+	private final int[][] relation;
+
+	private final T[] values;
+
+	private final BinaryOperator<T> union;
+
+	private final int[] depths;
+
+	private final int[] stack;
+
+	private int stackSize = 0;
+
+	private Digraph(int[][] relation, T[] values, BinaryOperator<T> union) {
+		this.relation = relation;
+		this.values = values;
+		this.union = union;
+		this.depths = new int[values.length];
+		this.stack = new int[values.length];
+	}
+
+	/**
+	 * Computes the closure of the values over the relation. The array with values is updated in place.
+	 * @param relation Per node the nodes that it is related to
+	 * @param values Per node the initial value, will contain the computed value when this method returns
+	 * @param union Function that returns the union of two values; it must not modify either of its arguments
+	 * @param <T> The type of the values
+	 */
+	static <T> void compute(int[][] relation, T[] values, BinaryOperator<T> union) {
+		Digraph<T> digraph = new Digraph<>(relation, values, union);
+		for (int x = 0; x < values.length; x++) {
+			if (digraph.depths[x] == 0) {
+				digraph.traverse(x);
+			}
+		}
+	}
+
+	private void traverse(int x) {
+		stack[stackSize++] = x;
+		int depth = stackSize;
+		depths[x] = depth;
+
+		for (int y : relation[x]) {
+			if (depths[y] == 0) {
+				traverse(y);
+			}
+			depths[x] = Math.min(depths[x], depths[y]);
+			values[x] = union.apply(values[x], values[y]);
+		}
+
+		// If x is the root of a strongly connected component, all nodes on the stack above it belong to the same
+		// component and thus get the same value.
+		if (depths[x] == depth) {
+			int top;
+			do {
+				top = stack[--stackSize];
+				depths[top] = Integer.MAX_VALUE;
+				values[top] = values[x];
+			} while (top != x);
+		}
+	}
+}
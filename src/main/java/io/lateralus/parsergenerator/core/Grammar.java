@@ -1,13 +1,21 @@
 package io.lateralus.parsergenerator.core;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
-import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import io.lateralus.parsergenerator.core.metrics.GenerationMetrics;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,7 +26,6 @@ import static io.lateralus.parsergenerator.core.NonTerminal.START;
 import static io.lateralus.parsergenerator.core.Terminal.EOF;
 import static io.lateralus.parsergenerator.core.Terminal.EPSILON;
 import static java.util.function.Function.identity;
-import static java.util.function.Predicate.not;
 
 /**
  * Represents a context free grammar.
@@ -38,38 +45,392 @@ public class Grammar {
 
 	private final NonTerminal sentenceSymbol;
 
-	private final Map<Symbol, Set<Terminal>> firstSets;
+	private final LookaheadSetFactory lookaheadSetFactory;
 
-	private final Map<NonTerminal, Set<Terminal>> followSets;
+	/**
+	 * The terminals and non-terminals of the grammar by their id (see {@link Symbol}).
+	 */
+	private final Terminal[] terminalsById;
+
+	private final NonTerminal[] nonTerminalsById;
+
+	/**
+	 * Per non-terminal (by id) its productions.
+	 */
+	private final List<Set<Production>> productionsByNonTerminal;
+
+	/**
+	 * Per non-terminal (by id) whether it can vanish and its first set.
+	 */
+	private final boolean[] nullableNonTerminals;
+
+	private final LookaheadSet[] firstSets;
+
+	/**
+	 * The follow sets (per non-terminal by id) are only needed by some consumers, so they are calculated on first use.
+	 */
+	private volatile LookaheadSet[] followSets;
+
+	/**
+	 * The fingerprint (see {@link #getFingerprint()}) is calculated on first use.
+	 */
+	private volatile String fingerprint;
+
+	/**
+	 * The ids of the symbols by their name; to look up symbols that are equal to, but not the same as the symbols of the
+	 * grammar, for instance the symbols of another version of the grammar.
+	 */
+	private final Map<Symbol, Integer> symbolIds = new HashMap<>();
+
+	/**
+	 * The productions by their id.
+	 */
+	private final Production[] productionsById;
+
+	/**
+	 * The LR(0) items of the grammar (a production with a dot pointer) are encoded as an int. The items of a production
+	 * are numbered consecutively, the item of production p with its dot pointer at position i is itemOffsets[p] + i
+	 * for i = 0 .. |rhs|. So the item after shifting the expected symbol of an item is the next item.
+	 */
+	private final int[] itemOffsets;
+
+	/**
+	 * Per LR(0) item the id of its production.
+	 */
+	private final int[] itemProductions;
+
+	/**
+	 * Per LR(0) item the symbol index (see {@link #symbolIndex(Symbol)}) of the expected symbol, or -1 if there is none.
+	 * Together with the offsets these are the right hand sides of the productions as int arrays.
+	 */
+	private final int[] itemSymbols;
+
+	/**
+	 * Per non-terminal (by id) the LR(0) items with the dot pointer at the start of its productions.
+	 */
+	private final int[][] startItems;
+
+	/**
+	 * The first set (without EPSILON) of the production suffix after the dot pointer of every LR(0) item.
+	 */
+	private final LookaheadSet[] suffixFirstSets;
+
+	/**
+	 * Whether the production suffix after the dot pointer of every LR(0) item can vanish (i.e. derive the empty string).
+	 */
+	private final boolean[] nullableSuffixes;
 
 	private Grammar(Set<Symbol> symbols,
-	                Set<Terminal> terminals,
-	                Set<NonTerminal> nonTerminals,
+	                Terminal[] terminalsById,
+	                NonTerminal[] nonTerminalsById,
 	                SetMultimap<NonTerminal, Production> productions,
 	                NonTerminal sentenceSymbol,
-	                Map<Symbol, Set<Terminal>> firstSets,
-	                Map<NonTerminal, Set<Terminal>> followSets) {
+	                LookaheadSetFactory lookaheadSetFactory,
+	                boolean[] nullableNonTerminals,
+	                LookaheadSet[] firstSets) {
 		this.symbols = symbols;
 		this.sentenceSymbol = sentenceSymbol;
-		this.terminals = terminals;
-		this.nonTerminals = nonTerminals;
+		this.terminalsById = terminalsById;
+		this.nonTerminalsById = nonTerminalsById;
+		this.terminals = symbols.stream()
+				.filter(Symbol::isTerminal)
+				.map(symbol -> (Terminal)symbol)
+				.collect(Collectors.toSet());
+		this.nonTerminals = ImmutableSet.copyOf(nonTerminalsById);
 		this.productions = productions;
+		this.lookaheadSetFactory = lookaheadSetFactory;
+		this.nullableNonTerminals = nullableNonTerminals;
 		this.firstSets = firstSets;
-		this.followSets = followSets;
+
+		for (Terminal terminal : terminalsById) {
+			symbolIds.put(terminal, terminal.getId());
+		}
+		for (NonTerminal nonTerminal : nonTerminalsById) {
+			symbolIds.put(nonTerminal, nonTerminal.getId());
+		}
+
+		this.productionsByNonTerminal = new ArrayList<>();
+		for (NonTerminal nonTerminal : nonTerminalsById) {
+			productionsByNonTerminal.add(ImmutableSet.copyOf(productions.get(nonTerminal)));
+		}
+
+		int productionCount = productions.values().stream().mapToInt(Production::getId).max().orElse(-1) + 1;
+		this.productionsById = new Production[productionCount];
+		this.itemOffsets = new int[productionCount];
+		int itemCount = 0;
+		for (Production production : productions.values()) {
+			productionsById[production.getId()] = production;
+			itemOffsets[production.getId()] = itemCount;
+			itemCount += production.getRhs().size() + 1;
+		}
+
+		this.itemProductions = new int[itemCount];
+		this.itemSymbols = new int[itemCount];
+		for (Production production : productions.values()) {
+			List<Symbol> rhs = production.getRhs();
+			int offset = itemOffsets[production.getId()];
+			for (int i = 0; i <= rhs.size(); i++) {
+				itemProductions[offset + i] = production.getId();
+				itemSymbols[offset + i] = i == rhs.size() || rhs.get(i) == EPSILON ? -1 : symbolIndex(rhs.get(i));
+			}
+		}
+
+		this.startItems = new int[nonTerminalsById.length][];
+		for (int id = 0; id < nonTerminalsById.length; id++) {
+			startItems[id] = productionsByNonTerminal.get(id).stream()
+					.mapToInt(production -> itemOffsets[production.getId()])
+					.toArray();
+		}
+
+		this.suffixFirstSets = new LookaheadSet[itemCount];
+		this.nullableSuffixes = new boolean[itemCount];
+		calculateSuffixes();
 	}
 
-	public Set<Terminal> firstSet(Symbol symbol) {
-		return firstSets.get(symbol);
+	/**
+	 * Fills the suffix arrays by walking every production from right to left. The first set of the suffix at position i
+	 * is the first set of the symbol at i, plus the first set of the suffix at i + 1 if that symbol can vanish.
+	 */
+	private void calculateSuffixes() {
+		LookaheadSet emptySet = lookaheadSetFactory.empty();
+		for (Production production : productions.values()) {
+			List<Symbol> rhs = production.getRhs();
+			int offset = itemOffsets[production.getId()];
+			suffixFirstSets[offset + rhs.size()] = emptySet;
+			nullableSuffixes[offset + rhs.size()] = true;
+			for (int i = rhs.size() - 1; i >= 0; i--) {
+				LookaheadSet firstSetOfSymbol = lookaheadSetFactory.remove(firstSet(rhs.get(i)), EPSILON);
+				if (isNullable(rhs.get(i))) {
+					suffixFirstSets[offset + i] = lookaheadSetFactory.union(firstSetOfSymbol, suffixFirstSets[offset + i + 1]);
+					nullableSuffixes[offset + i] = nullableSuffixes[offset + i + 1];
+				} else {
+					suffixFirstSets[offset + i] = firstSetOfSymbol;
+					nullableSuffixes[offset + i] = false;
+				}
+			}
+		}
+	}
+
+	public LookaheadSet firstSet(Symbol symbol) {
+		int id = idOf(symbol);
+		if (id < 0) {
+			return null;
+		}
+		return symbol.isTerminal() ? lookaheadSetFactory.of(terminalsById[id]) : firstSets[id];
 	}
 
 	public Set<Terminal> followSet(NonTerminal nonTerminal) {
-		return followSets.get(nonTerminal);
+		LookaheadSet[] result = followSets;
+		if (result == null) {
+			synchronized (this) {
+				if (followSets == null) {
+					followSets = calculateFollowSets();
+				}
+				result = followSets;
+			}
+		}
+		int id = idOf(nonTerminal);
+		return id < 0 ? null : result[id];
+	}
+
+	/**
+	 * Returns the fingerprint of the grammar; a SHA-256 hash (in hex) of a canonical form of its productions. Two
+	 * grammars with the same productions (in the same order, with the same rhs names, node names and binary flags)
+	 * have the same fingerprint, so it can be used as the key for everything that is derived from the grammar.
+	 */
+	public String getFingerprint() {
+		String result = fingerprint;
+		if (result == null) {
+			result = calculateFingerprint();
+			fingerprint = result;
+		}
+		return result;
+	}
+
+	private String calculateFingerprint() {
+		StringBuilder canonicalForm = new StringBuilder("grammar 1\n");
+		for (Production production : productionsById) {
+			canonicalForm.append(production.getId()).append(' ').append(production.getLhs().getName()).append(" ->");
+			for (Symbol symbol : production.getRhs()) {
+				canonicalForm.append(' ').append(symbol.isTerminal() ? 't' : 'n').append(':').append(symbol.getName());
+			}
+			canonicalForm.append(" : ").append(production.getRhsNames())
+					.append(' ').append(production.getNodeName())
+					.append(' ').append(production.isBinary())
+					.append('\n');
+		}
+		return Hashing.sha256().hashString(canonicalForm, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * Returns whether the symbol can vanish; i.e. derive the empty string. This is only the case for EPSILON and for
+	 * non-terminals.
+	 */
+	public boolean isNullable(Symbol symbol) {
+		if (symbol.isTerminal()) {
+			return symbol.equals(EPSILON);
+		}
+		int id = idOf(symbol);
+		return id >= 0 && nullableNonTerminals[id];
+	}
+
+	/**
+	 * Calculates the follow sets with the {@link Digraph} algorithm. For every occurrence of a non-terminal B in a
+	 * production A -> αBβ the first set of β is part of the follow set of B, and if β can vanish the follow set of B
+	 * includes the follow set of A.
+	 */
+	private LookaheadSet[] calculateFollowSets() {
+		LookaheadSet[] follow = new LookaheadSet[nonTerminalsById.length];
+		Arrays.fill(follow, lookaheadSetFactory.empty());
+		follow[START.getId()] = lookaheadSetFactory.of(EOF);
+		List<Set<Integer>> includes = new ArrayList<>();
+		for (int i = 0; i < nonTerminalsById.length; i++) {
+			includes.add(new LinkedHashSet<>());
+		}
+
+		for (Production production : productions.values()) {
+			List<Symbol> rhs = production.getRhs();
+			for (int i = 0; i < rhs.size(); i++) {
+				if (rhs.get(i).isTerminal()) {
+					continue;
+				}
+				int id = rhs.get(i).getId();
+				follow[id] = lookaheadSetFactory.union(follow[id], suffixFirstSet(production, i + 1));
+				if (isNullableSuffix(production, i + 1)) {
+					includes.get(id).add(production.getLhs().getId());
+				}
+			}
+		}
+
+		Digraph.compute(toRelation(includes), follow, lookaheadSetFactory::union);
+		return follow;
+	}
+
+	private static int[][] toRelation(List<Set<Integer>> related) {
+		return related.stream()
+				.map(set -> set.stream().mapToInt(Integer::intValue).toArray())
+				.toArray(int[][]::new);
+	}
+
+	/**
+	 * Returns the first set (without EPSILON) of the symbols of the production from the given position onwards. The
+	 * production must be part of this grammar. The set is precomputed, so this does not allocate.
+	 */
+	public LookaheadSet suffixFirstSet(Production production, int position) {
+		return suffixFirstSets[lr0Item(production, position)];
+	}
+
+	/**
+	 * Returns whether the symbols of the production from the given position onwards can vanish. The production must be
+	 * part of this grammar.
+	 */
+	public boolean isNullableSuffix(Production production, int position) {
+		return nullableSuffixes[lr0Item(production, position)];
+	}
+
+	/**
+	 * Returns the first set (without EPSILON) of the production suffix after the dot pointer of the LR(0) item.
+	 */
+	LookaheadSet suffixFirstSet(int lr0Item) {
+		return suffixFirstSets[lr0Item];
+	}
+
+	/**
+	 * Returns whether the production suffix after the dot pointer of the LR(0) item can vanish.
+	 */
+	boolean isNullableSuffix(int lr0Item) {
+		return nullableSuffixes[lr0Item];
+	}
+
+	/**
+	 * Returns the LR(0) item of the production (which must be part of this grammar) with the dot pointer at the given
+	 * position. The LR(0) items of the grammar are numbered 0 .. {@link #getLr0ItemCount()}.
+	 */
+	int lr0Item(Production production, int position) {
+		return itemOffsets[production.getId()] + position;
+	}
+
+	int getLr0ItemCount() {
+		return itemProductions.length;
+	}
+
+	Production getProduction(int lr0Item) {
+		return productionsById[itemProductions[lr0Item]];
+	}
+
+	int getPosition(int lr0Item) {
+		return lr0Item - itemOffsets[itemProductions[lr0Item]];
+	}
+
+	/**
+	 * Returns the symbol index of the expected symbol of the LR(0) item, or -1 if the dot pointer is at the end of the
+	 * production (or before EPSILON).
+	 */
+	int getExpectedSymbol(int lr0Item) {
+		return itemSymbols[lr0Item];
+	}
+
+	/**
+	 * Returns the LR(0) items with the dot pointer at the start of the productions of the non-terminal with the given
+	 * symbol index.
+	 */
+	int[] getStartItems(int symbolIndex) {
+		return startItems[symbolIndex - terminalsById.length];
+	}
+
+	/**
+	 * Returns the id of the symbol in this grammar, or -1 if the symbol is not part of the grammar. For the symbols of
+	 * the grammar itself this is an array lookup.
+	 */
+	int idOf(Symbol symbol) {
+		int id = symbol.getId();
+		Symbol[] symbolsById = symbol.isTerminal() ? terminalsById : nonTerminalsById;
+		if (id >= 0 && id < symbolsById.length && symbolsById[id] == symbol) {
+			return id;
+		}
+		Integer foundId = symbolIds.get(symbol);
+		return foundId == null ? -1 : foundId;
+	}
+
+	int getTerminalCount() {
+		return terminalsById.length;
+	}
+
+	int getNonTerminalCount() {
+		return nonTerminalsById.length;
+	}
+
+	/**
+	 * Returns the index of the symbol, or -1 if the symbol is not part of the grammar. The terminals and non-terminals
+	 * of the grammar are numbered together 0 .. {@link #getSymbolCount()}, with the terminals first.
+	 */
+	int symbolIndex(Symbol symbol) {
+		int id = idOf(symbol);
+		if (id < 0 || symbol.isTerminal()) {
+			return id;
+		}
+		return terminalsById.length + id;
+	}
+
+	Symbol symbol(int index) {
+		return index < terminalsById.length ? terminalsById[index] : nonTerminalsById[index - terminalsById.length];
+	}
+
+	int getSymbolCount() {
+		return terminalsById.length + nonTerminalsById.length;
 	}
 
 	public Set<Terminal> calculateFirstSetForRemainingSymbols(List<Symbol> remainingSymbols) {
-		// The function calculateFirstSetForRhs returns a SetView, which we cannot mutate. This is fine for use within
-		// the builder (i.e. calculating first sets), but not for where this method is called.
-		return new HashSet<>(Builder.calculateFirstSetForRhs(remainingSymbols, firstSets));
+		Set<Terminal> firstSet = new HashSet<>();
+		for (Symbol symbol : remainingSymbols) {
+			firstSet.addAll(lookaheadSetFactory.remove(firstSet(symbol), EPSILON));
+			if (!isNullable(symbol)) {
+				return firstSet;
+			}
+		}
+		// All symbols can vanish, so the remaining symbols can vanish as well
+		firstSet.add(EPSILON);
+		return firstSet;
 	}
 
 	public static Builder builder() {
@@ -81,7 +442,8 @@ public class Grammar {
 	}
 
 	public Set<Production> getProductions(NonTerminal lhs) {
-		return productions.get(lhs);
+		int id = idOf(lhs);
+		return id < 0 ? Set.of() : productionsByNonTerminal.get(id);
 	}
 
 	public Collection<Production> getProductions() {
@@ -100,17 +462,23 @@ public class Grammar {
 		return nonTerminals;
 	}
 
+	/**
+	 * Returns the factory that creates the (interned) lookahead sets for the terminals of this grammar.
+	 */
+	public LookaheadSetFactory getLookaheadSetFactory() {
+		return lookaheadSetFactory;
+	}
+
 	/**
 	 * Builder to create a {@link Grammar}
 	 */
 	public static class Builder {
-		/**
-		 * Set containing only the epsilon symbol
-		 */
-		private static final Set<Terminal> EPSILON_SET = Set.of(EPSILON);
 
 		private final List<Production> productions = new ArrayList<>();
-		private final Map<Symbol, Symbol> internedSymbols = new HashMap<>();
+		private final Map<Symbol, Symbol> internedSymbols = new LinkedHashMap<>();
+		private int terminalCount = Terminal.RESERVED_IDS;
+		private int nonTerminalCount = NonTerminal.RESERVED_IDS;
+		private GenerationMetrics metrics = GenerationMetrics.disabled();
 
 		/**
 		 * Interns the symbols in the production and adds a production with the interned symbols to the list.
@@ -118,12 +486,12 @@ public class Grammar {
 		 * @return The current builder
 		 */
 		public Builder addProduction(Production production) {
-			NonTerminal lhs = (NonTerminal) internedSymbols.computeIfAbsent(production.getLhs(), identity());
+			NonTerminal lhs = (NonTerminal) intern(production.getLhs());
 			List<Symbol> rhs = new ArrayList<>();
 			for (Symbol symbol : production.getRhs()) {
-				rhs.add(internedSymbols.computeIfAbsent(symbol, identity()));
+				rhs.add(intern(symbol));
 			}
-			productions.add(new Production(production, lhs, rhs));
+			productions.add(new Production(production, lhs, rhs, productions.size()));
 			return this;
 		}
 
@@ -131,38 +499,72 @@ public class Grammar {
 			return addProduction(new Production(lhs, rhs, rhsNames, nodeName, isBinary));
 		}
 
+		/**
+		 * Sets the metrics in which the time that is spent on the first sets is recorded.
+		 * @param metrics The metrics to record in
+		 * @return The current builder
+		 */
+		public Builder metrics(GenerationMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * Returns the symbol of the grammar that is equal to the given symbol. The first time a symbol is seen, a copy
+		 * of it with the next free id is created (the symbol itself is not changed), except for EOF, EPSILON and START
+		 * which have a fixed id.
+		 */
+		private Symbol intern(Symbol symbol) {
+			return internedSymbols.computeIfAbsent(symbol, s -> {
+				for (Symbol reservedSymbol : List.of(EOF, EPSILON, START)) {
+					if (reservedSymbol.equals(s)) {
+						return reservedSymbol;
+					}
+				}
+				return s.isTerminal()
+						? new Terminal(s.getName(), terminalCount++)
+						: new NonTerminal(s.getName(), nonTerminalCount++);
+			});
+		}
+
 		public Grammar build() throws GrammarException {
-			Set<Symbol> symbols = internedSymbols.keySet();
+			Set<Symbol> symbols = new LinkedHashSet<>(internedSymbols.values());
 
 			// Check that the grammar is not augmented
 			if (symbols.contains(START)) {
 				throw new GrammarException("The rules should not contain the augmentation rule (S' -> <start symbol>)");
 			}
 
-			Set<Terminal> terminals = calculateTerminals(symbols);
-			Set<NonTerminal> nonTerminals = calculateNonTerminals(symbols);
-			SetMultimap<NonTerminal, Production> productionsMap = calculateProductionMap();
-
-			augmentGrammar(nonTerminals, productionsMap);
-
-			Map<Symbol, Set<Terminal>> firstSets = calculateFirstSets(terminals, nonTerminals, productionsMap);
-			Map<NonTerminal, Set<Terminal>> followSets = calculateFollowSets(nonTerminals, productionsMap, firstSets);
-
-			return new Grammar(symbols, terminals, nonTerminals, productionsMap, START, firstSets, followSets);
-		}
+			Terminal[] terminalsById = new Terminal[terminalCount];
+			NonTerminal[] nonTerminalsById = new NonTerminal[nonTerminalCount];
+			terminalsById[EOF.getId()] = EOF;
+			terminalsById[EPSILON.getId()] = EPSILON;
+			nonTerminalsById[START.getId()] = START;
+			for (Symbol symbol : symbols) {
+				if (symbol.isTerminal()) {
+					terminalsById[symbol.getId()] = (Terminal)symbol;
+				} else {
+					nonTerminalsById[symbol.getId()] = (NonTerminal)symbol;
+				}
+			}
 
-		private Set<Terminal> calculateTerminals(Set<Symbol> symbols) {
-			return symbols.stream()
-					.filter(Symbol::isTerminal)
-					.map(symbol -> (Terminal)symbol)
-					.collect(Collectors.toSet());
-		}
+			SetMultimap<NonTerminal, Production> productionsMap = calculateProductionMap();
+			augmentGrammar(productionsMap);
+
+			LookaheadSetFactory lookaheadSetFactory = new LookaheadSetFactory(Arrays.asList(terminalsById));
+			boolean[] nullableNonTerminals;
+			LookaheadSet[] firstSets;
+			GenerationMetrics.PhaseTimer timer = metrics.startPhase(GenerationMetrics.Phase.FIRST_SETS);
+			try {
+				nullableNonTerminals = calculateNullableNonTerminals(nonTerminalsById.length, productionsMap);
+				firstSets = calculateFirstSets(nonTerminalsById, productionsMap, nullableNonTerminals,
+						lookaheadSetFactory);
+			} finally {
+				timer.stop();
+			}
 
-		private Set<NonTerminal> calculateNonTerminals(Set<Symbol> symbols) {
-			return symbols.stream()
-					.filter(not(Symbol::isTerminal))
-					.map(symbol -> (NonTerminal) symbol)
-					.collect(Collectors.toSet());
+			return new Grammar(symbols, terminalsById, nonTerminalsById, productionsMap, START, lookaheadSetFactory,
+					nullableNonTerminals, firstSets);
 		}
 
 		private SetMultimap<NonTerminal, Production> calculateProductionMap() {
@@ -173,107 +575,90 @@ public class Grammar {
 							MultimapBuilder.hashKeys().hashSetValues()::build));
 		}
 
-		private void augmentGrammar(Set<NonTerminal> nonTerminals, SetMultimap<NonTerminal, Production> productionsMap) {
-			nonTerminals.add(START);
-			final Production startProduction = new Production(START, List.of(productions.get(0).getLhs()), null, "Root", false);
+		private void augmentGrammar(SetMultimap<NonTerminal, Production> productionsMap) {
+			final Production startProduction = new Production(START, List.of(productions.get(0).getLhs()), null, null, false,
+					productions.size());
 			productionsMap.put(START, startProduction);
 		}
 
-		private static Set<Terminal> calculateFirstSetForRhs(List<Symbol> rhs, Map<Symbol, Set<Terminal>> firstSets) {
-			int i = 0;
-			Set<Terminal> firstBi = firstSets.get(rhs.get(i));
-			Set<Terminal> firstSetsForRhs = Sets.difference(firstBi, EPSILON_SET);
-
-			while (firstBi.contains(EPSILON) && i < rhs.size() - 1) {
-				firstBi = firstSets.get(rhs.get(i));
-				firstSetsForRhs = Sets.union(firstSetsForRhs, Sets.difference(firstBi, EPSILON_SET));
-				i++;
-			}
-
-			if (firstBi.contains(EPSILON) && i == rhs.size() - 1) {
-				firstSetsForRhs = Sets.union(firstSetsForRhs, EPSILON_SET);
-			}
-			return firstSetsForRhs;
-		}
-
 		/**
-		 * Calculates the first sets for the grammar
-		 * @return A map containing the first set per symbol.
+		 * Calculates the non-terminals that can vanish in time linear to the size of the grammar. For every production
+		 * the number of symbols that are not known to vanish is counted. Whenever a symbol is found to vanish, the
+		 * counts of the productions in which it occurs are decreased, and when a count drops to zero the lhs of the
+		 * production vanishes as well.
+		 * @return Per non-terminal (by id) whether it can vanish
 		 */
-		private static Map<Symbol, Set<Terminal>> calculateFirstSets(
-				Set<Terminal> terminals,
-				Set<NonTerminal> nonTerminals,
-				SetMultimap<NonTerminal, Production> productions
-		) {
-			Map<Symbol, Set<Terminal>> firstSets = new HashMap<>();
-
-			for (Terminal terminal : terminals) {
-				firstSets.put(terminal, Set.of(terminal));
-			}
-			for (NonTerminal nonTerminal : nonTerminals) {
-				firstSets.put(nonTerminal, new HashSet<>());
+		private static boolean[] calculateNullableNonTerminals(int nonTerminalCount,
+				SetMultimap<NonTerminal, Production> productions) {
+			Map<Symbol, List<Production>> occurrences = new HashMap<>();
+			int[] counts = new int[productions.values().stream().mapToInt(Production::getId).max().orElse(-1) + 1];
+			for (Production production : productions.values()) {
+				counts[production.getId()] = production.getRhs().size();
+				for (Symbol symbol : production.getRhs()) {
+					occurrences.computeIfAbsent(symbol, s -> new ArrayList<>()).add(production);
+				}
 			}
 
-			firstSets.put(EOF, Set.of(EOF));
-
-			boolean isChanged = true;
-
-			while (isChanged) {
-				isChanged = false;
-				for (Production production : productions.values()) {
-					Set<Terminal> firstSetForRhs = calculateFirstSetForRhs(production.getRhs(), firstSets);
-					isChanged |= firstSets.get(production.getLhs()).addAll(firstSetForRhs);
+			boolean[] nullableNonTerminals = new boolean[nonTerminalCount];
+			Deque<Symbol> workList = new ArrayDeque<>();
+			workList.push(EPSILON);
+			while (!workList.isEmpty()) {
+				for (Production production : occurrences.getOrDefault(workList.pop(), List.of())) {
+					NonTerminal lhs = production.getLhs();
+					if (--counts[production.getId()] == 0 && !nullableNonTerminals[lhs.getId()]) {
+						nullableNonTerminals[lhs.getId()] = true;
+						workList.push(lhs);
+					}
 				}
 			}
-
-			return firstSets;
+			return nullableNonTerminals;
 		}
 
 		/**
-		 * Calculates the follow sets for the grammar
-		 * @return A map containing the follow set per symbol.
+		 * Calculates the first sets for the grammar with the {@link Digraph} algorithm. A non-terminal A directly starts
+		 * with terminal t if there is a production A -> αtβ where α can vanish, and the first set of A includes the first
+		 * set of the non-terminal B if there is a production A -> αBβ where α can vanish.
+		 * @return The first set per non-terminal (by id).
 		 */
-		private static Map<NonTerminal, Set<Terminal>> calculateFollowSets(
-				Set<NonTerminal> nonTerminals,
+		private static LookaheadSet[] calculateFirstSets(
+				NonTerminal[] nonTerminalsById,
 				SetMultimap<NonTerminal, Production> productions,
-				Map<Symbol, Set<Terminal>> firstSets
+				boolean[] nullableNonTerminals,
+				LookaheadSetFactory lookaheadSetFactory
 		) {
-			Map<NonTerminal, Set<Terminal>> followSets = new HashMap<>();
-
-			for (NonTerminal nonTerminal : nonTerminals) {
-				followSets.put(nonTerminal, new HashSet<>());
-			}
-
-			followSets.put(START, Set.of(EOF));
-
-			boolean isChanged = true;
-
-			while (isChanged) {
-				isChanged = false;
-
-				for (Production rule : productions.values()) {
-					Set<Terminal> trailer = new HashSet<>(followSets.get(rule.getLhs()));
-					List<Symbol> rhs = rule.getRhs();
-					for (int i = rhs.size() - 1; i >= 0; i--) {
-						Symbol bi = rhs.get(i);
-						Set<Terminal> firstBi = firstSets.get(bi);
-						if (bi.isTerminal()) {
-							trailer = firstBi;
+			// The first sets are calculated without EPSILON, which is added afterwards for the nullable non-terminals.
+			LookaheadSet[] first = new LookaheadSet[nonTerminalsById.length];
+			List<Set<Integer>> includes = new ArrayList<>();
+			for (NonTerminal nonTerminal : nonTerminalsById) {
+				Set<Terminal> directFirstSet = new HashSet<>();
+				Set<Integer> included = new LinkedHashSet<>();
+				for (Production production : productions.get(nonTerminal)) {
+					for (Symbol symbol : production.getRhs()) {
+						if (symbol == EPSILON) {
 							continue;
 						}
-						// else it is a non terminal
-						NonTerminal nonTerminalBi = (NonTerminal)bi;
-						isChanged |= followSets.get(nonTerminalBi).addAll(trailer);
-						if (firstBi.contains(EPSILON)) {
-							trailer = Sets.union(trailer, Sets.difference(firstBi, EPSILON_SET));
-						} else {
-							trailer = firstBi;
+						if (symbol.isTerminal()) {
+							directFirstSet.add((Terminal)symbol);
+							break;
+						}
+						included.add(symbol.getId());
+						if (!nullableNonTerminals[symbol.getId()]) {
+							break;
 						}
 					}
 				}
+				first[nonTerminal.getId()] = lookaheadSetFactory.of(directFirstSet);
+				includes.add(included);
+			}
+
+			Digraph.compute(toRelation(includes), first, lookaheadSetFactory::union);
 
+			for (int id = 0; id < first.length; id++) {
+				if (nullableNonTerminals[id]) {
+					first[id] = lookaheadSetFactory.union(first[id], lookaheadSetFactory.of(EPSILON));
+				}
 			}
-			return followSets;
+			return first;
 		}
 	}
 }
@@ -105,6 +105,12 @@ public class GrammarParser {
 		List<String> symbolNames = new ArrayList<>();
 
 		for (String symbolDef : symbolsDefs) {
+			// EPSILON (an empty production) is not a valid symbol name, but is converted by convertToSymbol.
+			if (symbolDef.equals(EPSILON.getName())) {
+				symbols.add(symbolDef);
+				symbolNames.add(null);
+				continue;
+			}
 			Matcher matcher = SYMBOL_PATTERN.matcher(symbolDef);
 			if (!matcher.matches()) {
 				throw new GrammarParserException("The symbol '" + symbolDef + "' is not a valid symbol");
@@ -0,0 +1,326 @@
+package io.lateralus.parsergenerator.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the canonical collection for a grammar that is a (small) edit of a grammar for which the canonical collection
+ * was created before.
+ *
+ * The old and the new grammar are compared to find the affected non-terminals; the non-terminals of which the
+ * productions or the first set changed. The closure of a state does not change if none of its items has an affected
+ * symbol at or after its dot pointer, because only those symbols are expanded or used to determine lookaheads while
+ * closing the kernel. Whether that holds for the items that a non-terminal expands to is determined once for all
+ * non-terminals (see {@link #findUnaffectedNonTerminals()}), so that a state is checked by its kernel alone.
+ *
+ * The collection is then constructed with the normal work list, but for every kernel that was already part of the old
+ * collection and whose closure is not affected, the (frozen) old state is reused instead of closing the kernel again.
+ * Since the closure is not affected, the successors are the states of the kernels of the old successors, which are
+ * found by the old state without looking up (and hashing) the kernel. Items of both grammars with the same production,
+ * position and lookahead terminals are equal, so the reusable old state of a kernel that is not reached that way is
+ * looked up without mapping the old collection first; only the old states that the work list reaches are mapped to the
+ * productions and lookahead sets of the new grammar.
+ *
+ * The old collection must be a canonical collection; i.e. created with
+ * {@link ParserBuilder#createCanonicalCollection(Grammar, Closer)}. If terminals were removed from the grammar all
+ * states are closed again.
+ */
+public class IncrementalCollectionBuilder {
+
+	private final Grammar oldGrammar;
+
+	private final Set<State> oldCollection;
+
+	private final Grammar grammar;
+
+	private final Closer closer;
+
+	/**
+	 * The production of the new grammar per (equal) production of the old grammar.
+	 */
+	private final Map<Production, Production> productions = new IdentityHashMap<>();
+
+	/**
+	 * Per production of the old grammar the position from which its items are not affected by the edits; the position
+	 * after its last affected symbol, or {@link Integer#MAX_VALUE} if it is not part of the new grammar.
+	 */
+	private final Map<Production, Integer> unaffectedPositions = new IdentityHashMap<>();
+
+	private final Map<LookaheadSet, LookaheadSet> lookaheadSets = new IdentityHashMap<>();
+
+	/**
+	 * The states of the old collection that can be reused, by the hash code of their kernel (which does not depend on
+	 * the grammar).
+	 */
+	private final Map<Integer, List<State>> reusableStates;
+
+	/**
+	 * The kernel of an old state in terms of the new grammar, per old state that was reached.
+	 */
+	private final Map<State, Set<Item>> mappedKernels;
+
+	private Set<NonTerminal> unaffectedNonTerminals = Set.of();
+
+	/**
+	 * The old state per state that was reused from the old collection.
+	 */
+	private final Map<State, State> oldStates;
+
+	/**
+	 * The state per old state that was reused.
+	 */
+	private final Map<State, State> newStates;
+
+	private int reusedStateCount = 0;
+
+	private int closedStateCount = 0;
+
+	public IncrementalCollectionBuilder(Grammar oldGrammar, Set<State> oldCollection, Grammar grammar, Closer closer) {
+		this.oldGrammar = oldGrammar;
+		this.oldCollection = oldCollection;
+		this.grammar = grammar;
+		this.closer = closer;
+		// The maps of the states are sized for the common case of an edit that keeps the number of states.
+		this.reusableStates = new HashMap<>(2 * oldCollection.size());
+		this.mappedKernels = new IdentityHashMap<>(oldCollection.size());
+		this.oldStates = new IdentityHashMap<>(oldCollection.size());
+		this.newStates = new IdentityHashMap<>(oldCollection.size());
+	}
+
+	public Set<State> build() {
+		Map<Production, Production> newProductions = new HashMap<>();
+		for (Production production : grammar.getProductions()) {
+			newProductions.put(production, production);
+		}
+		for (Production production : oldGrammar.getProductions()) {
+			Production newProduction = newProductions.get(production);
+			if (newProduction != null) {
+				productions.put(production, newProduction);
+			}
+		}
+
+		if (grammar.getTerminals().containsAll(oldGrammar.getTerminals())) {
+			Set<Symbol> affectedNonTerminals = findAffectedNonTerminals();
+			for (Production production : oldGrammar.getProductions()) {
+				unaffectedPositions.put(production, findUnaffectedPosition(production, affectedNonTerminals));
+			}
+			unaffectedNonTerminals = findUnaffectedNonTerminals();
+			for (State state : oldCollection) {
+				if (isReusable(state)) {
+					reusableStates.computeIfAbsent(state.getKernel().hashCode(), hashCode -> new ArrayList<>(1))
+							.add(state);
+				}
+			}
+		}
+
+		Set<State> canonicalCollection = Collections.newSetFromMap(new IdentityHashMap<>(oldCollection.size()));
+		// The reused states are known by their old state (see newStates), so only the closed states are interned.
+		Map<Set<Item>, State> internedStates = new HashMap<>();
+		Deque<State> workList = new ArrayDeque<>();
+
+		Set<Item> startKernel = ParserBuilder.createStartKernel(grammar);
+		State startState = createState(startKernel, findReusableState(startKernel), internedStates);
+		canonicalCollection.add(startState);
+		workList.push(startState);
+
+		while (!workList.isEmpty()) {
+			State currentState = workList.pop();
+			State oldState = oldStates.get(currentState);
+			if (oldState == null) {
+				for (Map.Entry<Symbol, Set<Item>> entry : ParserBuilder.createKernels(currentState).entrySet()) {
+					Set<Item> kernel = entry.getValue();
+					State reusableState = findReusableState(kernel);
+					State nextState = reusableState == null ? internedStates.get(kernel) : newStates.get(reusableState);
+					if (nextState == null) {
+						nextState = createState(kernel, reusableState, internedStates);
+						canonicalCollection.add(nextState);
+						workList.push(nextState);
+					}
+					currentState.getTransitions().put(entry.getKey(), nextState);
+				}
+			} else {
+				for (State oldTarget : oldState.getTransitions().values()) {
+					// The kernel of the old successor only has to be mapped if its state is not reused yet.
+					State nextState = newStates.get(oldTarget);
+					if (nextState == null) {
+						Set<Item> kernel = mapKernel(oldTarget);
+						State reusableState = isReusable(oldTarget) ? oldTarget : null;
+						nextState = reusableState == null ? internedStates.get(kernel) : null;
+						if (nextState == null) {
+							nextState = createState(kernel, reusableState, internedStates);
+							canonicalCollection.add(nextState);
+							workList.push(nextState);
+						}
+					}
+					// Take the transition symbol from the new grammar; it is the symbol in front of the dot pointer.
+					Item item = nextState.getKernel().iterator().next();
+					Symbol symbol = item.getProduction().getRhs().get(item.getPosition() - 1);
+					currentState.getTransitions().put(symbol, nextState);
+				}
+			}
+			currentState.freeze(grammar);
+		}
+		return canonicalCollection;
+	}
+
+	/**
+	 * Returns the number of times a closure was taken from the old collection instead of calculated during the
+	 * build.
+	 */
+	public int getReusedStateCount() {
+		return reusedStateCount;
+	}
+
+	/**
+	 * Returns the number of kernels that had to be closed during the build.
+	 */
+	public int getClosedStateCount() {
+		return closedStateCount;
+	}
+
+	/**
+	 * Creates the state of the kernel (in terms of the new grammar). If a reusable old state with the same kernel is
+	 * given it is reused; its kernel is then the given one and its reduce items (the only other items that a frozen
+	 * state retains) are mapped to the new grammar. Otherwise the kernel is closed and the state is interned.
+	 */
+	private State createState(Set<Item> kernel, State reusableState, Map<Set<Item>, State> internedStates) {
+		if (reusableState == null) {
+			closedStateCount++;
+			State state = new State(closer.closure(kernel));
+			internedStates.put(kernel, state);
+			return state;
+		}
+		reusedStateCount++;
+		Set<Item> items = new HashSet<>(kernel);
+		for (Item item : reusableState.getItems()) {
+			if (!reusableState.getKernel().contains(item)) {
+				items.add(mapItem(item));
+			}
+		}
+		State state = new State(items);
+		oldStates.put(state, reusableState);
+		newStates.put(reusableState, state);
+		return state;
+	}
+
+	/**
+	 * Returns the reusable old state with the given kernel (in terms of the new grammar), if there is one. The kernels
+	 * of the candidates are mapped to the new grammar to compare them, since that is much cheaper than comparing the
+	 * lookahead sets of different grammars by their terminals.
+	 */
+	private State findReusableState(Set<Item> kernel) {
+		List<State> candidates = reusableStates.get(kernel.hashCode());
+		if (candidates != null) {
+			for (State candidate : candidates) {
+				if (mapKernel(candidate).equals(kernel)) {
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Maps the kernel of an old state to items with the same productions and lookaheads of the new grammar.
+	 */
+	private Set<Item> mapKernel(State oldState) {
+		return mappedKernels.computeIfAbsent(oldState, state -> {
+			Set<Item> mappedItems = new HashSet<>();
+			for (Item item : state.getKernel()) {
+				mappedItems.add(mapItem(item));
+			}
+			return mappedItems;
+		});
+	}
+
+	/**
+	 * Finds the non-terminals of which the productions or the first set differ between the old and the new grammar.
+	 */
+	private Set<Symbol> findAffectedNonTerminals() {
+		Set<NonTerminal> nonTerminals = new HashSet<>(grammar.getNonTerminals());
+		nonTerminals.addAll(oldGrammar.getNonTerminals());
+
+		Set<Symbol> affectedNonTerminals = new HashSet<>();
+		for (NonTerminal nonTerminal : nonTerminals) {
+			if (!grammar.getNonTerminals().contains(nonTerminal) || !oldGrammar.getNonTerminals().contains(nonTerminal)
+					|| !grammar.getProductions(nonTerminal).equals(oldGrammar.getProductions(nonTerminal))
+					|| !grammar.firstSet(nonTerminal).equals(oldGrammar.firstSet(nonTerminal))) {
+				affectedNonTerminals.add(nonTerminal);
+			}
+		}
+		return affectedNonTerminals;
+	}
+
+	/**
+	 * Finds the non-terminals whose expansion during a closure is not affected by the edits; the non-terminals of which
+	 * no production contains an affected symbol, and of which the productions only start with unaffected
+	 * non-terminals (or terminals). This is the greatest fixpoint of these conditions: every candidate of which a
+	 * production starts with a non-terminal that is no longer a candidate is removed, until none is.
+	 */
+	private Set<NonTerminal> findUnaffectedNonTerminals() {
+		Set<NonTerminal> unaffectedNonTerminals = new HashSet<>();
+		for (NonTerminal nonTerminal : oldGrammar.getNonTerminals()) {
+			if (oldGrammar.getProductions(nonTerminal).stream()
+					.allMatch(production -> unaffectedPositions.get(production) == 0)) {
+				unaffectedNonTerminals.add(nonTerminal);
+			}
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = unaffectedNonTerminals.removeIf(nonTerminal -> oldGrammar.getProductions(nonTerminal).stream()
+					.map(production -> production.getRhs().get(0))
+					.anyMatch(symbol -> !symbol.isTerminal() && !unaffectedNonTerminals.contains(symbol)));
+		}
+		return unaffectedNonTerminals;
+	}
+
+	/**
+	 * Returns whether the closure of the old state is not affected by the edits; whether none of its kernel items has
+	 * an affected symbol at or after its dot pointer, and the symbol that it expects is not expanded into affected
+	 * items.
+	 */
+	private boolean isReusable(State state) {
+		for (Item item : state.getKernel()) {
+			if (item.getPosition() < unaffectedPositions.get(item.getProduction())) {
+				return false;
+			}
+			Symbol expectedSymbol = item.getExpectedSymbol();
+			if (expectedSymbol != null && !expectedSymbol.isTerminal()
+					&& !unaffectedNonTerminals.contains(expectedSymbol)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int findUnaffectedPosition(Production production, Set<Symbol> affectedSymbols) {
+		if (productions.get(production) == null) {
+			return Integer.MAX_VALUE;
+		}
+		List<Symbol> rhs = production.getRhs();
+		for (int i = rhs.size() - 1; i >= 0; i--) {
+			if (affectedSymbols.contains(rhs.get(i))) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Maps an item of the old grammar to the item with the same production and lookahead of the new grammar.
+	 */
+	private Item mapItem(Item item) {
+		LookaheadSet lookahead = lookaheadSets.computeIfAbsent(item.getLookahead(),
+				grammar.getLookaheadSetFactory()::of);
+		return new Item(productions.get(item.getProduction()), lookahead, item.getPosition());
+	}
+}
@@ -1,6 +1,5 @@
 package io.lateralus.parsergenerator.core;
 
-import java.util.Set;
 import java.util.stream.Collectors;
 
 import static io.lateralus.parsergenerator.core.Terminal.EPSILON;
@@ -9,17 +8,18 @@ import static io.lateralus.parsergenerator.core.Terminal.EPSILON;
  * Represents an LR(1) item of which a {@link State} is made of.
  *
  * A LR(1) item consists of a production with a dot-pointer (representing the current "position") and a lookahead
- * symbol.
+ * symbol. The lookahead symbols of the items that share a production and position are grouped in one (interned)
+ * {@link LookaheadSet}.
  */
 public class Item {
 
     private final Production production;
 
-    private final Set<Terminal> lookahead;
+    private final LookaheadSet lookahead;
 
     private final int position;
 
-    public Item(Production production, Set<Terminal> lookahead, int position) {
+    public Item(Production production, LookaheadSet lookahead, int position) {
         this.production = production;
         this.lookahead = lookahead;
         this.position = position;
@@ -78,7 +78,7 @@ public class Item {
         return production;
     }
 
-    public Set<Terminal> getLookahead() {
+    public LookaheadSet getLookahead() {
         return lookahead;
     }
 
@@ -1,10 +1,5 @@
 package io.lateralus.parsergenerator.core;
 
-import java.util.List;
-import java.util.Set;
-
-import static io.lateralus.parsergenerator.core.Terminal.EPSILON;
-
 /**
  * Calculates the closure as defined by Knuth.
  */
@@ -14,23 +9,16 @@ public class KnuthCloser extends AbstractCloser {
 		super(grammar);
 	}
 
-	protected Set<Terminal> determineLookahead(Production production, Set<Terminal> lookahead, int position) {
-		int nextPosition = position + 1;
-		List<Symbol> rhs = production.getRhs();
-
-		// If the next position is equal to the length of the rhs the lookahead is the lookahead of the item.
-		if (nextPosition == rhs.size()) {
-			return lookahead;
-		}
-
-		// Create a sublist that holds the symbols after the dot pointer in the item. Note that since the sublist is
-		// basically a view on a list this is a cheap operation. Alternatively we could have the iteration in
-		// calculateFirstSetForRemainingSymbols start at the next position.
-		List<Symbol> remainingSymbols = rhs.subList(nextPosition, rhs.size());
-		Set<Terminal> extraLookahead = grammar.calculateFirstSetForRemainingSymbols(remainingSymbols);
+	protected LookaheadSet determineLookahead(int lr0Item, LookaheadSet lookahead) {
+		// The symbols after the expected symbol are the suffix of the next item.
+		int nextItem = lr0Item + 1;
 
-		if (extraLookahead.remove(EPSILON)) {
-			extraLookahead.addAll(lookahead);
+		// The lookahead is the first set of the symbols after the expected symbol. If those symbols can vanish (which
+		// is always the case if there are no symbols left) the lookahead of the item is added as well. Both are
+		// precomputed by the grammar per production suffix.
+		LookaheadSet extraLookahead = grammar.suffixFirstSet(nextItem);
+		if (grammar.isNullableSuffix(nextItem)) {
+			return lookaheadSetFactory.union(extraLookahead, lookahead);
 		}
 
 		return extraLookahead;
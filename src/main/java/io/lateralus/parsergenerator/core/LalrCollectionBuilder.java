@@ -0,0 +1,372 @@
+package io.lateralus.parsergenerator.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.lateralus.parsergenerator.core.Terminal.EOF;
+
+/**
+ * Creates the collection of LALR(1) states for a grammar.
+ *
+ * Instead of building the canonical LR(1) collection, the LR(0) automaton is built once, after which the lookaheads
+ * are computed with the algorithm of DeRemer and Pennello (Efficient Computation of LALR(1) Look-Ahead Sets). The
+ * algorithm works on the non-terminal transitions (p, A) of the LR(0) automaton and three relations between them:
+ * - DR(p, A); the terminals that can be shifted directly after the transition
+ * - reads; (p, A) reads (r, C) if p --A--> r --C--> and C can vanish
+ * - includes; (p, A) includes (p', B) if B -> βAγ, p' --β--> p and γ can vanish
+ * The follow set of every transition is the closure of DR over reads and includes, which is computed twice with the
+ * {@link Digraph} algorithm. Finally every item gets the union of the follow sets of the transitions it "looks back"
+ * to (i.e. the transitions (p, A) from which the item A -> α•β was reached by walking α).
+ *
+ * While the automaton is built and the relations are computed, the items are int encoded LR(0) items (see
+ * {@link Grammar#lr0Item}) and symbols are referred to by their index (see {@link Grammar#symbolIndex(Symbol)}). The
+ * resulting states contain normal {@link Item}s, so the tables can be built (and conflicts are detected) exactly as
+ * for the canonical collection.
+ */
+public class LalrCollectionBuilder {
+
+	private final Grammar grammar;
+
+	private final LookaheadSetFactory lookaheadSetFactory;
+
+	private final List<Lr0State> states = new ArrayList<>();
+
+	private final List<Transition> transitions = new ArrayList<>();
+
+	/**
+	 * Per LR(0) item the number (+ 1) of the last state of which the closure contains the item.
+	 */
+	private final int[] closureMarks;
+
+	private Lr0State startState;
+
+	private int startTransition;
+
+	public LalrCollectionBuilder(Grammar grammar) {
+		this.grammar = grammar;
+		this.lookaheadSetFactory = grammar.getLookaheadSetFactory();
+		this.closureMarks = new int[grammar.getLr0ItemCount()];
+	}
+
+	public Set<State> build() {
+		createLr0Automaton();
+
+		LookaheadSet[] follow = createDirectReads();
+		int[][] reads = createReadsRelation();
+		List<Lookback> lookbacks = new ArrayList<>();
+		int[][] includes = createIncludesRelation(lookbacks);
+
+		Digraph.compute(reads, follow, lookaheadSetFactory::union);
+		Digraph.compute(includes, follow, lookaheadSetFactory::union);
+
+		return createStates(follow, lookbacks);
+	}
+
+	private void createLr0Automaton() {
+		Map<Kernel, Lr0State> internedStates = new HashMap<>();
+		Deque<Lr0State> workList = new ArrayDeque<>();
+
+		int[] startItems = grammar.getStartItems(grammar.symbolIndex(grammar.getSentenceSymbol())).clone();
+		Arrays.sort(startItems);
+		Kernel startKernel = new Kernel(startItems);
+		startState = createState(startKernel);
+		internedStates.put(startKernel, startState);
+		workList.push(startState);
+
+		while (!workList.isEmpty()) {
+			Lr0State currentState = workList.pop();
+
+			// Group the advanced items by their expected symbol by sorting them on (symbol index, item). This also
+			// keeps the order of the transitions (and thus of the states) stable.
+			long[] advancedItems = new long[currentState.items.length];
+			int count = 0;
+			for (int item : currentState.items) {
+				int expectedSymbol = grammar.getExpectedSymbol(item);
+				if (expectedSymbol >= 0) {
+					advancedItems[count++] = ((long)expectedSymbol << 32) | (item + 1);
+				}
+			}
+			Arrays.sort(advancedItems, 0, count);
+
+			List<Integer> symbols = new ArrayList<>();
+			List<Lr0State> targets = new ArrayList<>();
+			int start = 0;
+			while (start < count) {
+				int symbol = (int)(advancedItems[start] >>> 32);
+				int end = start;
+				while (end < count && (int)(advancedItems[end] >>> 32) == symbol) {
+					end++;
+				}
+				int[] items = new int[end - start];
+				for (int i = start; i < end; i++) {
+					items[i - start] = (int)advancedItems[i];
+				}
+				start = end;
+
+				Kernel kernel = new Kernel(items);
+				Lr0State nextState = internedStates.get(kernel);
+				if (nextState == null) {
+					nextState = createState(kernel);
+					internedStates.put(kernel, nextState);
+					workList.push(nextState);
+				}
+				symbols.add(symbol);
+				targets.add(nextState);
+			}
+
+			currentState.symbols = symbols.stream().mapToInt(Integer::intValue).toArray();
+			currentState.targets = targets.toArray(new Lr0State[0]);
+			currentState.transitionIndices = new int[symbols.size()];
+			for (int i = 0; i < symbols.size(); i++) {
+				if (symbols.get(i) < grammar.getTerminalCount()) {
+					currentState.transitionIndices[i] = -1;
+				} else {
+					currentState.transitionIndices[i] = transitions.size();
+					transitions.add(new Transition(currentState, symbols.get(i)));
+				}
+			}
+		}
+
+		// The start state has no incoming transition on the start symbol, however to be able to treat the start
+		// productions as any other production we add a pseudo transition for it. Its follow set is {EOF}.
+		startTransition = transitions.size();
+		transitions.add(new Transition(startState, grammar.symbolIndex(grammar.getSentenceSymbol())));
+	}
+
+	private Lr0State createState(Kernel kernel) {
+		int mark = states.size() + 1;
+		int[] closure = Arrays.copyOf(kernel.items, Math.max(16, kernel.items.length * 2));
+		int size = kernel.items.length;
+		for (int item : kernel.items) {
+			closureMarks[item] = mark;
+		}
+		// The closure itself is the work list; every item is expanded once.
+		for (int i = 0; i < size; i++) {
+			int expectedSymbol = grammar.getExpectedSymbol(closure[i]);
+			if (expectedSymbol < grammar.getTerminalCount()) {
+				continue;
+			}
+			for (int item : grammar.getStartItems(expectedSymbol)) {
+				if (closureMarks[item] != mark) {
+					closureMarks[item] = mark;
+					if (size == closure.length) {
+						closure = Arrays.copyOf(closure, size * 2);
+					}
+					closure[size++] = item;
+				}
+			}
+		}
+		Lr0State state = new Lr0State(Arrays.copyOf(closure, size));
+		states.add(state);
+		return state;
+	}
+
+	private LookaheadSet[] createDirectReads() {
+		LookaheadSet[] directReads = new LookaheadSet[transitions.size()];
+		for (int i = 0; i < transitions.size(); i++) {
+			Set<Terminal> terminals = new HashSet<>();
+			if (i == startTransition) {
+				terminals.add(EOF);
+			} else {
+				Lr0State target = transitions.get(i).target();
+				for (int symbol : target.symbols) {
+					if (symbol < grammar.getTerminalCount()) {
+						terminals.add((Terminal)grammar.symbol(symbol));
+					}
+				}
+			}
+			directReads[i] = lookaheadSetFactory.of(terminals);
+		}
+		return directReads;
+	}
+
+	private int[][] createReadsRelation() {
+		int[][] reads = new int[transitions.size()][];
+		for (int i = 0; i < transitions.size(); i++) {
+			List<Integer> related = new ArrayList<>();
+			Lr0State target = transitions.get(i).target();
+			if (target != null) {
+				for (int j = 0; j < target.symbols.length; j++) {
+					if (target.transitionIndices[j] >= 0 && canVanish(target.symbols[j])) {
+						related.add(target.transitionIndices[j]);
+					}
+				}
+			}
+			reads[i] = toArray(related);
+		}
+		return reads;
+	}
+
+	/**
+	 * Creates the includes relation. While walking the productions this also collects the lookbacks; the items that
+	 * get their lookahead from a transition.
+	 */
+	private int[][] createIncludesRelation(List<Lookback> lookbacks) {
+		List<List<Integer>> includes = new ArrayList<>();
+		for (int i = 0; i < transitions.size(); i++) {
+			includes.add(new ArrayList<>());
+		}
+
+		for (int i = 0; i < transitions.size(); i++) {
+			Transition transition = transitions.get(i);
+			for (int startItem : grammar.getStartItems(transition.symbol)) {
+				Lr0State state = transition.state;
+				int item = startItem;
+				int symbol;
+				// Note that the expected symbol of an item before EPSILON is -1, so empty productions are not walked.
+				while ((symbol = grammar.getExpectedSymbol(item)) >= 0) {
+					lookbacks.add(new Lookback(state, item, i));
+					if (symbol >= grammar.getTerminalCount() && grammar.isNullableSuffix(item + 1)) {
+						includes.get(transitionIndex(state, symbol)).add(i);
+					}
+					state = state.target(symbol);
+					item++;
+				}
+				lookbacks.add(new Lookback(state, item, i));
+			}
+		}
+
+		int[][] result = new int[includes.size()][];
+		for (int i = 0; i < includes.size(); i++) {
+			result[i] = toArray(includes.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index of the non-terminal transition of the state, where the transition on the sentence symbol of
+	 * the start state is the pseudo transition.
+	 */
+	private int transitionIndex(Lr0State state, int symbol) {
+		if (state == startState && symbol == transitions.get(startTransition).symbol) {
+			return startTransition;
+		}
+		return state.transitionIndices[Arrays.binarySearch(state.symbols, symbol)];
+	}
+
+	private Set<State> createStates(LookaheadSet[] follow, List<Lookback> lookbacks) {
+		Map<Lr0State, ClosureSet> lookaheads = new IdentityHashMap<>();
+		for (Lookback lookback : lookbacks) {
+			lookaheads.computeIfAbsent(lookback.state, state -> new ClosureSet(lookaheadSetFactory, state.items.length))
+					.add(lookback.item, follow[lookback.transition]);
+		}
+
+		Map<Lr0State, State> stateMap = new IdentityHashMap<>();
+		Set<State> collection = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Lr0State lr0State : states) {
+			ClosureSet stateLookaheads = lookaheads.get(lr0State);
+			Set<Item> items = new HashSet<>();
+			for (int lr0Item : lr0State.items) {
+				LookaheadSet lookahead = stateLookaheads.getLookahead(lr0Item);
+				items.add(new Item(grammar.getProduction(lr0Item), lookahead, grammar.getPosition(lr0Item)));
+			}
+			State state = new State(items);
+			stateMap.put(lr0State, state);
+			collection.add(state);
+		}
+
+		for (Lr0State lr0State : states) {
+			State state = stateMap.get(lr0State);
+			for (int i = 0; i < lr0State.symbols.length; i++) {
+				state.getTransitions().put(grammar.symbol(lr0State.symbols[i]), stateMap.get(lr0State.targets[i]));
+			}
+			state.freeze(grammar);
+		}
+		return collection;
+	}
+
+	private boolean canVanish(int symbol) {
+		return grammar.isNullable(grammar.symbol(symbol));
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		return list.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * The kernel of an LR(0) state; its items sorted in ascending order.
+	 */
+	private static class Kernel {
+		private final int[] items;
+		private final int hashCode;
+
+		private Kernel(int[] items) {
+			this.items = items;
+			this.hashCode = Arrays.hashCode(items);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Kernel that = (Kernel) o;
+			return hashCode == that.hashCode && Arrays.equals(items, that.items);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	/**
+	 * A state of the LR(0) automaton. Its transitions are sorted by the index of the symbol; per transition the index
+	 * of the non-terminal transition (see {@link Transition}) or -1 for a terminal transition.
+	 */
+	private static class Lr0State {
+		private final int[] items;
+		private int[] symbols;
+		private Lr0State[] targets;
+		private int[] transitionIndices;
+
+		private Lr0State(int[] items) {
+			this.items = items;
+		}
+
+		private Lr0State target(int symbol) {
+			int index = Arrays.binarySearch(symbols, symbol);
+			return index < 0 ? null : targets[index];
+		}
+	}
+
+	/**
+	 * A non-terminal transition (p, A) in the LR(0) automaton.
+	 */
+	private static class Transition {
+		private final Lr0State state;
+		private final int symbol;
+
+		private Transition(Lr0State state, int symbol) {
+			this.state = state;
+			this.symbol = symbol;
+		}
+
+		private Lr0State target() {
+			return state.target(symbol);
+		}
+	}
+
+	/**
+	 * Records that the item in the state gets (part of) its lookahead from the follow set of the transition.
+	 */
+	private static class Lookback {
+		private final Lr0State state;
+		private final int item;
+		private final int transition;
+
+		private Lookback(Lr0State state, int item, int transition) {
+			this.state = state;
+			this.item = item;
+			this.transition = transition;
+		}
+	}
+}
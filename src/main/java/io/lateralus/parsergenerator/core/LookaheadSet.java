@@ -0,0 +1,218 @@
+package io.lateralus.parsergenerator.core;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of terminals that is used as the lookahead of an {@link Item}.
+ *
+ * The terminals are identified by their index in the {@link LookaheadSetFactory} that created the set. Depending on the
+ * number of terminals in the grammar a set is stored as a bitset (dense) or as a sorted array of indices (sparse).
+ * Sets can only be created by the factory, which interns them; equal sets that are created by the same factory are the
+ * same instance. The hash code (which follows the contract of {@link java.util.Set#hashCode()}) is calculated once.
+ */
+public final class LookaheadSet extends AbstractSet<Terminal> {
+
+	private final LookaheadSetFactory factory;
+
+	/**
+	 * The bits of the set if the set is dense, null otherwise.
+	 */
+	private final long[] words;
+
+	/**
+	 * The sorted indices of the set if the set is sparse, null otherwise.
+	 */
+	private final int[] indices;
+
+	private final int size;
+
+	private final int hashCode;
+
+	LookaheadSet(LookaheadSetFactory factory, long[] words, int[] indices) {
+		this.factory = factory;
+		this.words = words;
+		this.indices = indices;
+
+		int size = 0;
+		int hashCode = 0;
+		if (words != null) {
+			for (int i = nextIndex(words, 0); i >= 0; i = nextIndex(words, i + 1)) {
+				size++;
+				hashCode += factory.terminalHashCode(i);
+			}
+		} else {
+			for (int index : indices) {
+				hashCode += factory.terminalHashCode(index);
+			}
+			size = indices.length;
+		}
+		this.size = size;
+		this.hashCode = hashCode;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (!(o instanceof Terminal)) {
+			return false;
+		}
+		int index = factory.indexOf((Terminal)o);
+		return index >= 0 && containsIndex(index);
+	}
+
+	/**
+	 * Returns whether the terminal with the given index (in the factory of this set) is contained in this set.
+	 */
+	public boolean containsIndex(int index) {
+		if (words != null) {
+			int word = index >>> 6;
+			return word < words.length && (words[word] & (1L << index)) != 0;
+		}
+		return Arrays.binarySearch(indices, index) >= 0;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if (c instanceof LookaheadSet && ((LookaheadSet)c).factory == factory) {
+			return containsAll((LookaheadSet)c);
+		}
+		return super.containsAll(c);
+	}
+
+	private boolean containsAll(LookaheadSet other) {
+		if (other == this || other.size == 0) {
+			return true;
+		}
+		if (other.size > size) {
+			return false;
+		}
+		if (words != null) {
+			for (int i = 0; i < other.words.length; i++) {
+				if ((other.words[i] & ~words[i]) != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+		int i = 0;
+		for (int index : other.indices) {
+			while (i < indices.length && indices[i] < index) {
+				i++;
+			}
+			if (i == indices.length || indices[i] != index) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether this set and the given set (created by the same factory) have at least one terminal in common.
+	 */
+	public boolean intersects(LookaheadSet other) {
+		if (words != null) {
+			for (int i = 0; i < words.length; i++) {
+				if ((words[i] & other.words[i]) != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+		int i = 0;
+		int j = 0;
+		while (i < indices.length && j < other.indices.length) {
+			if (indices[i] == other.indices[j]) {
+				return true;
+			}
+			if (indices[i] < other.indices[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Iterator<Terminal> iterator() {
+		return new Iterator<>() {
+			private int next = words != null ? nextIndex(words, 0) : 0;
+
+			@Override
+			public boolean hasNext() {
+				return words != null ? next >= 0 : next < indices.length;
+			}
+
+			@Override
+			public Terminal next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				if (words != null) {
+					int index = next;
+					next = nextIndex(words, next + 1);
+					return factory.terminal(index);
+				}
+				return factory.terminal(indices[next++]);
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o instanceof LookaheadSet && ((LookaheadSet)o).factory == factory) {
+			LookaheadSet that = (LookaheadSet) o;
+			return hashCode == that.hashCode && size == that.size && Arrays.equals(words, that.words) &&
+					Arrays.equals(indices, that.indices);
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	LookaheadSetFactory getFactory() {
+		return factory;
+	}
+
+	long[] getWords() {
+		return words;
+	}
+
+	int[] getIndices() {
+		return indices;
+	}
+
+	private static int nextIndex(long[] words, int from) {
+		int word = from >>> 6;
+		if (word >= words.length) {
+			return -1;
+		}
+		long bits = words[word] & (-1L << from);
+		while (true) {
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+			if (++word == words.length) {
+				return -1;
+			}
+			bits = words[word];
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package io.lateralus.parsergenerator.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static io.lateralus.parsergenerator.core.Terminal.EOF;
+import static io.lateralus.parsergenerator.core.Terminal.EPSILON;
+
+/**
+ * Creates and interns the {@link LookaheadSet}s for a grammar.
+ *
+ * Every terminal of the grammar is mapped to a dense index, which is the id of the terminal in the grammar (see
+ * {@link Symbol}); EOF and EPSILON always get the indices 0 and 1. For grammars
+ * with more than {@link #SPARSE_THRESHOLD} terminals the sets are stored as sorted index arrays instead of bitsets,
+ * because a bitset would then mostly consist of zeros.
+ *
+ * The factory is thread safe.
+ */
+public final class LookaheadSetFactory {
+
+	public static final int EOF_INDEX = 0;
+
+	public static final int EPSILON_INDEX = 1;
+
+	static final int SPARSE_THRESHOLD = 1024;
+
+	private final Terminal[] terminals;
+
+	private final int[] terminalHashCodes;
+
+	private final Map<Terminal, Integer> indices = new HashMap<>();
+
+	private final boolean isSparse;
+
+	private final int wordCount;
+
+	private final ConcurrentMap<LookaheadSet, LookaheadSet> internedSets = new ConcurrentHashMap<>();
+
+	private final LookaheadSet emptySet;
+
+	private final LookaheadSet[] singletonSets;
+
+	/**
+	 * Creates the factory for the given terminals, which must be ordered by their id (starting with EOF and EPSILON).
+	 */
+	LookaheadSetFactory(Collection<Terminal> grammarTerminals) {
+		Set<Terminal> orderedTerminals = new LinkedHashSet<>();
+		orderedTerminals.add(EOF);
+		orderedTerminals.add(EPSILON);
+		orderedTerminals.addAll(grammarTerminals);
+
+		terminals = orderedTerminals.toArray(new Terminal[0]);
+		terminalHashCodes = new int[terminals.length];
+		for (int i = 0; i < terminals.length; i++) {
+			indices.put(terminals[i], i);
+			terminalHashCodes[i] = terminals[i].hashCode();
+		}
+
+		isSparse = terminals.length > SPARSE_THRESHOLD;
+		wordCount = (terminals.length + 63) >>> 6;
+
+		emptySet = intern(isSparse ? new LookaheadSet(this, null, new int[0]) : new LookaheadSet(this, new long[wordCount], null));
+		singletonSets = new LookaheadSet[terminals.length];
+		for (int i = 0; i < terminals.length; i++) {
+			singletonSets[i] = intern(createSet(new int[] { i }));
+		}
+	}
+
+	/**
+	 * Returns the index of the terminal, or -1 if the terminal is not part of the grammar.
+	 */
+	public int indexOf(Terminal terminal) {
+		int id = terminal.getId();
+		if (id >= 0 && id < terminals.length && terminals[id] == terminal) {
+			return id;
+		}
+		// The terminal is not the instance of the grammar (e.g. it was created by the caller), look it up by name.
+		Integer index = indices.get(terminal);
+		return index == null ? -1 : index;
+	}
+
+	public Terminal terminal(int index) {
+		return terminals[index];
+	}
+
+	/**
+	 * Returns the number of terminals (including EOF and EPSILON) known to this factory.
+	 */
+	public int size() {
+		return terminals.length;
+	}
+
+	public LookaheadSet empty() {
+		return emptySet;
+	}
+
+	public LookaheadSet of(Terminal terminal) {
+		return singletonSets[checkedIndexOf(terminal)];
+	}
+
+	public LookaheadSet of(Collection<Terminal> terminals) {
+		if (terminals instanceof LookaheadSet && ((LookaheadSet)terminals).getFactory() == this) {
+			return (LookaheadSet)terminals;
+		}
+		int[] sortedIndices = terminals.stream()
+				.mapToInt(this::checkedIndexOf)
+				.sorted()
+				.distinct()
+				.toArray();
+		return intern(createSet(sortedIndices));
+	}
+
+	/**
+	 * Returns the union of both sets. If one of the sets contains the other, that set is returned without allocating.
+	 */
+	public LookaheadSet union(LookaheadSet a, LookaheadSet b) {
+		if (a.containsAll(b)) {
+			return a;
+		}
+		if (b.containsAll(a)) {
+			return b;
+		}
+
+		if (!isSparse) {
+			long[] aWords = a.getWords();
+			long[] bWords = b.getWords();
+			long[] words = new long[wordCount];
+			for (int i = 0; i < wordCount; i++) {
+				words[i] = aWords[i] | bWords[i];
+			}
+			return intern(new LookaheadSet(this, words, null));
+		}
+
+		int[] aIndices = a.getIndices();
+		int[] bIndices = b.getIndices();
+		int[] mergedIndices = new int[aIndices.length + bIndices.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < aIndices.length || j < bIndices.length) {
+			if (j == bIndices.length || (i < aIndices.length && aIndices[i] < bIndices[j])) {
+				mergedIndices[k++] = aIndices[i++];
+			} else if (i == aIndices.length || bIndices[j] < aIndices[i]) {
+				mergedIndices[k++] = bIndices[j++];
+			} else {
+				mergedIndices[k++] = aIndices[i++];
+				j++;
+			}
+		}
+		return intern(new LookaheadSet(this, null, Arrays.copyOf(mergedIndices, k)));
+	}
+
+	/**
+	 * Returns the set without the given terminal.
+	 */
+	public LookaheadSet remove(LookaheadSet set, Terminal terminal) {
+		int index = checkedIndexOf(terminal);
+		if (!set.containsIndex(index)) {
+			return set;
+		}
+		if (!isSparse) {
+			long[] words = set.getWords().clone();
+			words[index >>> 6] &= ~(1L << index);
+			return intern(new LookaheadSet(this, words, null));
+		}
+		int[] remainingIndices = Arrays.stream(set.getIndices())
+				.filter(i -> i != index)
+				.toArray();
+		return intern(new LookaheadSet(this, null, remainingIndices));
+	}
+
+	int terminalHashCode(int index) {
+		return terminalHashCodes[index];
+	}
+
+	private int checkedIndexOf(Terminal terminal) {
+		int index = indexOf(terminal);
+		if (index < 0) {
+			throw new IllegalArgumentException("The terminal " + terminal + " is not part of the grammar");
+		}
+		return index;
+	}
+
+	/**
+	 * Creates a (not yet interned) set from the given sorted and distinct indices.
+	 */
+	private LookaheadSet createSet(int[] sortedIndices) {
+		if (isSparse) {
+			return new LookaheadSet(this, null, sortedIndices);
+		}
+		long[] words = new long[wordCount];
+		for (int index : sortedIndices) {
+			words[index >>> 6] |= 1L << index;
+		}
+		return new LookaheadSet(this, words, null);
+	}
+
+	private LookaheadSet intern(LookaheadSet set) {
+		LookaheadSet internedSet = internedSets.putIfAbsent(set, set);
+		return internedSet != null ? internedSet : set;
+	}
+}
@@ -5,9 +5,18 @@ package io.lateralus.parsergenerator.core;
  */
 public class NonTerminal extends Symbol {
 
-    public static final NonTerminal START = new NonTerminal("Root");
+    public static final NonTerminal START = new NonTerminal("Root", 0);
+
+    /**
+     * The number of non-terminal ids that are reserved for START.
+     */
+    static final int RESERVED_IDS = 1;
 
     public NonTerminal(String name) {
         super(false, name);
     }
+
+    NonTerminal(String name, int id) {
+        super(false, name, id);
+    }
 }
@@ -0,0 +1,218 @@
+package io.lateralus.parsergenerator.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.lateralus.parsergenerator.core.Terminal.EOF;
+
+/**
+ * Creates a minimal LR(1) collection for a grammar by merging states while the collection is constructed.
+ *
+ * This is the practical general method of Pager (A Practical General Method for Constructing LR(k) Parsers) as it is
+ * discussed in the dissertation of Xin Chen (Measuring and extending LR(1) parser generation). Whenever a new kernel
+ * has the same LR(0) core as an existing state, the two are merged if they are weakly compatible. Two kernels with
+ * items 1..n and lookaheads L1..Ln and L'1..L'n are weakly compatible if for every pair i != j either:
+ * - Li ∩ L'j and L'i ∩ Lj are both empty, or
+ * - Li ∩ Lj is not empty, or
+ * - L'i ∩ L'j is not empty
+ * Merging weakly compatible states cannot introduce a new reduce-reduce conflict, so the resulting collection has the
+ * power of the canonical LR(1) collection while it usually has as many states as the LALR(1) collection.
+ *
+ * When a merge adds lookaheads to an existing state, that state is closed again and its successors are recalculated.
+ * States that are no longer reachable from the start state after this are dropped from the result.
+ */
+public class PagerCollectionBuilder {
+
+	private final Grammar grammar;
+
+	private final Closer closer;
+
+	private final LookaheadSetFactory lookaheadSetFactory;
+
+	private final Map<Set<Core>, List<Node>> nodesByCore = new HashMap<>();
+
+	private final Deque<Node> workList = new ArrayDeque<>();
+
+	public PagerCollectionBuilder(Grammar grammar, Closer closer) {
+		this.grammar = grammar;
+		this.closer = closer;
+		this.lookaheadSetFactory = grammar.getLookaheadSetFactory();
+	}
+
+	public Set<State> build() {
+		Map<Core, LookaheadSet> startKernel = new LinkedHashMap<>();
+		for (Production production : grammar.getProductions(grammar.getSentenceSymbol())) {
+			startKernel.put(new Core(production, 0), lookaheadSetFactory.of(EOF));
+		}
+		Node startNode = findOrMerge(startKernel);
+
+		while (!workList.isEmpty()) {
+			Node currentNode = workList.pop();
+			currentNode.isQueued = false;
+			currentNode.closure = closer.closure(currentNode.toItems());
+			currentNode.transitions.clear();
+
+			// Find all new kernels
+			Map<Symbol, Map<Core, LookaheadSet>> kernels = new LinkedHashMap<>();
+			for (Item item : currentNode.closure) {
+				Symbol expectedSymbol = item.getExpectedSymbol();
+				if (expectedSymbol != null) {
+					Core core = new Core(item.getProduction(), item.getPosition() + 1);
+					kernels.computeIfAbsent(expectedSymbol, symbol -> new LinkedHashMap<>())
+							.merge(core, item.getLookahead(), lookaheadSetFactory::union);
+				}
+			}
+
+			for (Map.Entry<Symbol, Map<Core, LookaheadSet>> entry : kernels.entrySet()) {
+				currentNode.transitions.put(entry.getKey(), findOrMerge(entry.getValue()));
+			}
+		}
+
+		return createStates(startNode);
+	}
+
+	/**
+	 * Returns the node for the given kernel. This is either an existing node with the same kernel, an existing node
+	 * that is weakly compatible with the kernel (and into which the kernel is merged) or a new node.
+	 */
+	private Node findOrMerge(Map<Core, LookaheadSet> kernel) {
+		List<Node> candidates = nodesByCore.computeIfAbsent(new HashSet<>(kernel.keySet()), core -> new ArrayList<>());
+
+		for (Node candidate : candidates) {
+			if (candidate.kernel.equals(kernel)) {
+				return candidate;
+			}
+		}
+
+		for (Node candidate : candidates) {
+			if (isWeaklyCompatible(candidate.kernel, kernel)) {
+				boolean isChanged = false;
+				for (Map.Entry<Core, LookaheadSet> entry : kernel.entrySet()) {
+					LookaheadSet current = candidate.kernel.get(entry.getKey());
+					LookaheadSet merged = lookaheadSetFactory.union(current, entry.getValue());
+					if (merged != current) {
+						candidate.kernel.put(entry.getKey(), merged);
+						isChanged = true;
+					}
+				}
+				if (isChanged) {
+					enqueue(candidate);
+				}
+				return candidate;
+			}
+		}
+
+		Node node = new Node(new LinkedHashMap<>(kernel));
+		candidates.add(node);
+		enqueue(node);
+		return node;
+	}
+
+	private void enqueue(Node node) {
+		if (!node.isQueued) {
+			node.isQueued = true;
+			workList.push(node);
+		}
+	}
+
+	private static boolean isWeaklyCompatible(Map<Core, LookaheadSet> kernel, Map<Core, LookaheadSet> otherKernel) {
+		List<Core> cores = new ArrayList<>(kernel.keySet());
+		for (int i = 0; i < cores.size(); i++) {
+			LookaheadSet li = kernel.get(cores.get(i));
+			LookaheadSet otherLi = otherKernel.get(cores.get(i));
+			for (int j = i + 1; j < cores.size(); j++) {
+				LookaheadSet lj = kernel.get(cores.get(j));
+				LookaheadSet otherLj = otherKernel.get(cores.get(j));
+				if (!li.intersects(otherLj) && !otherLi.intersects(lj)) {
+					continue;
+				}
+				if (li.intersects(lj) || otherLi.intersects(otherLj)) {
+					continue;
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Set<State> createStates(Node startNode) {
+		// Only the nodes that are (still) reachable from the start node end up in the collection.
+		Map<Node, State> stateMap = new IdentityHashMap<>();
+		Deque<Node> reachable = new ArrayDeque<>();
+		stateMap.put(startNode, new State(startNode.closure));
+		reachable.push(startNode);
+		while (!reachable.isEmpty()) {
+			Node node = reachable.pop();
+			for (Node target : node.transitions.values()) {
+				if (!stateMap.containsKey(target)) {
+					stateMap.put(target, new State(target.closure));
+					reachable.push(target);
+				}
+			}
+		}
+
+		Set<State> collection = Collections.newSetFromMap(new IdentityHashMap<>());
+		stateMap.forEach((node, state) -> {
+			node.transitions.forEach((symbol, target) -> state.getTransitions().put(symbol, stateMap.get(target)));
+			state.freeze(grammar);
+			collection.add(state);
+		});
+		return collection;
+	}
+
+	/**
+	 * The LR(0) core of a kernel item.
+	 */
+	private static class Core {
+		private final Production production;
+		private final int position;
+
+		private Core(Production production, int position) {
+			this.production = production;
+			this.position = position;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Core that = (Core) o;
+			return position == that.position &&
+					production.equals(that.production);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * production.hashCode() + position;
+		}
+	}
+
+	/**
+	 * A state under construction. The lookaheads of its kernel can still grow when other kernels are merged into it.
+	 */
+	private static class Node {
+		private final Map<Core, LookaheadSet> kernel;
+		private final Map<Symbol, Node> transitions = new HashMap<>();
+		private Set<Item> closure;
+		private boolean isQueued = false;
+
+		private Node(Map<Core, LookaheadSet> kernel) {
+			this.kernel = kernel;
+		}
+
+		private Set<Item> toItems() {
+			Set<Item> items = new HashSet<>();
+			kernel.forEach((core, lookahead) -> items.add(new Item(core.production, lookahead, core.position)));
+			return items;
+		}
+	}
+}
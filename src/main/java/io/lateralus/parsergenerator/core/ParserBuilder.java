@@ -1,32 +1,184 @@
 package io.lateralus.parsergenerator.core;
 
 import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Table;
 import io.lateralus.parsergenerator.codegenerator.CodeGenerationException;
-import io.lateralus.parsergenerator.codegenerator.CodeGenerator;
+import io.lateralus.parsergenerator.codegenerator.SourceFile;
 import io.lateralus.parsergenerator.codegenerator.simple.BasicParserCodeGenerator;
 import io.lateralus.parsergenerator.core.definition.ParserDefinition;
+import io.lateralus.parsergenerator.core.definition.ParserDefinitionCache;
+import io.lateralus.parsergenerator.core.metrics.GenerationMetrics;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
+/**
+ * Builds the parse tables of a grammar. Configure it with {@link #builder(Grammar)}; the {@link Construction} of the
+ * collection of states, whether the reductions of unit productions are eliminated, a pool on which the canonical
+ * collection and the tables are built in parallel, the collection of a previous version of the grammar from which
+ * the canonical collection is updated incrementally and a cache of parser definitions.
+ */
 public class ParserBuilder {
 
-	public static void main(String[] args) throws GrammarParserException, GrammarException, CodeGenerationException {
+	/**
+	 * The ways in which the collection of states can be constructed.
+	 */
+	public enum Construction {
+		/**
+		 * The canonical LR(1) collection. It has the most states, but no conflicts that the grammar does not require.
+		 */
+		CANONICAL("canonical-lr1"),
+
+		/**
+		 * The LALR(1) collection (see {@link LalrCollectionBuilder}). It has as many states as the LR(0) automaton, but
+		 * may contain (reduce-reduce) conflicts that the canonical collection does not have.
+		 */
+		LALR("lalr1"),
+
+		/**
+		 * A minimal LR(1) collection (see {@link PagerCollectionBuilder}), in which weakly compatible states are merged.
+		 * It is (nearly) as small as the LALR(1) collection, without its conflicts.
+		 */
+		MINIMAL("minimal-lr1");
+
+		private final String configurationName;
+
+		Construction(String configurationName) {
+			this.configurationName = configurationName;
+		}
+
+		/**
+		 * Returns the name of the construction in the configuration of a cached parser definition, which must not
+		 * change when the constant is renamed.
+		 */
+		public String getConfigurationName() {
+			return configurationName;
+		}
+	}
+
+	private final Grammar grammar;
+
+	private final Construction construction;
+
+	private final boolean eliminateUnitProductions;
+
+	private final GenerationMetrics metrics;
+
+	private final ForkJoinPool pool;
+
+	private final Grammar previousGrammar;
+
+	private final Set<State> previousCollection;
+
+	private final ParserDefinitionCache cache;
+
+	private ParserBuilder(Builder builder) {
+		this.grammar = builder.grammar;
+		this.construction = builder.construction;
+		this.eliminateUnitProductions = builder.eliminateUnitProductions;
+		this.metrics = builder.metrics;
+		this.pool = builder.pool;
+		this.previousGrammar = builder.previousGrammar;
+		this.previousCollection = builder.previousCollection;
+		this.cache = builder.cache;
+	}
+
+	public static Builder builder(Grammar grammar) {
+		return new Builder(grammar);
+	}
+
+	/**
+	 * Creates the collection of states of the grammar with the configured construction.
+	 */
+	public Set<State> createCollection() {
+		switch (construction) {
+			case LALR:
+				return createLalrCollection(grammar);
+			case MINIMAL:
+				return createMinimalCollection(grammar, createCloser());
+			case CANONICAL:
+				if (previousCollection != null) {
+					return updateCanonicalCollection(previousGrammar, previousCollection, grammar, createCloser());
+				}
+				if (pool != null) {
+					return createCanonicalCollection(grammar, createCloser(), pool, metrics);
+				}
+				return createCanonicalCollection(grammar, createCloser(), metrics);
+			default:
+				throw new IllegalStateException("Unknown construction " + construction);
+		}
+	}
+
+	/**
+	 * Returns the description of everything besides the grammar that influences the parse tables, under which the
+	 * parser definition is cached. The parallel and incremental constructions create the same canonical collection, so
+	 * they are not part of it.
+	 */
+	public String getConfiguration() {
+		return construction.getConfigurationName()
+				+ (eliminateUnitProductions ? " without unit productions" : " with unit productions");
+	}
+
+	/**
+	 * Creates the collection of states and builds the parser definition from it, or loads the parser definition from
+	 * the cache if one is configured and the definition is cached under the {@link #getConfiguration() configuration}.
+	 */
+	public ParserDefinition createParserDefinition(List<Terminal> orderedTerminalList) {
+		if (cache == null) {
+			return createParserDefinition(createCollection(), orderedTerminalList);
+		}
+		return cache.get(grammar, getConfiguration(), orderedTerminalList,
+				() -> createParserDefinition(createCollection(), orderedTerminalList));
+	}
+
+	/**
+	 * Builds the parser definition from a collection of states that was created by {@link #createCollection()}.
+	 */
+	public ParserDefinition createParserDefinition(Set<State> collection, List<Terminal> orderedTerminalList) {
+		Table<State, NonTerminal, State> gotoTable = pool != null
+				? buildGotoTable(collection, pool, metrics)
+				: buildGotoTable(collection, metrics);
+		Table<State, Terminal, Action> actionTable = pool != null
+				? buildActionTable(collection, pool, metrics)
+				: buildActionTable(collection, metrics);
+		if (eliminateUnitProductions) {
+			eliminateUnitProductions(actionTable, gotoTable);
+		}
+		return new ParserDefinition(grammar, actionTable, gotoTable, orderedTerminalList);
+	}
+
+	private Closer createCloser() {
+		return ChenxCloser.builder(grammar).metrics(metrics).build();
+	}
+
+	/**
+	 * Generates the parser of an expression grammar into src/test-out/java and prints the metrics of the generation.
+	 * The arguments are the construction of the collection (canonical by default) and -v (or --verbose), which also
+	 * prints the first sets, the states, the parse tables and the generated sources.
+	 */
+	public static void main(String[] args) throws GrammarParserException, GrammarException, CodeGenerationException,
+			IOException {
 
 		// https://zaa.ch/jison/try/usf/index.html
 		// %%
@@ -198,166 +350,553 @@ public class ParserBuilder {
 //				"Y -> times F Y | ε\n" +
 //				"F -> left E right | id";
 
+		Construction construction = Construction.CANONICAL;
+		boolean verbose = false;
+		for (String arg : args) {
+			if (arg.equals("-v") || arg.equals("--verbose")) {
+				verbose = true;
+			} else {
+				construction = Construction.valueOf(arg.toUpperCase());
+			}
+		}
+		GenerationMetrics metrics = new GenerationMetrics();
+
 		// First parse the input grammar into an internal representation
 		Grammar grammar = GrammarParser
 				.builderFrom(grammarString)
+				.metrics(metrics)
 				.build();
 
-//		Closer closer = new KnuthCloser(grammar);
-		Closer closer = ChenxCloser.builder(grammar).build();
-
-		for (Symbol symbol : grammar.getNonTerminals()) {
-			System.out.println(symbol + " -> " + grammar.firstSet(symbol));
+		if (verbose) {
+			for (Symbol symbol : grammar.getNonTerminals()) {
+				System.out.println(symbol + " -> " + grammar.firstSet(symbol));
+			}
+			System.out.println();
 		}
-		System.out.println();
 
-		// Take the grammar and determine the canonical collection
-		Set<State> canonicalCollection = createCanonicalCollection(grammar, closer);
+		List<Terminal> orderedTerminalList = List.of(Terminal.EOF, new Terminal("PLUS"), new Terminal("TIMES"),
+				new Terminal("LEFT_PAREN"), new Terminal("RIGHT_PAREN"), new Terminal("NUMBER"));
 
-		int i = 0;
-		for (State state : canonicalCollection) {
-			System.out.println(String.format("%02d", i++) + " " + state);
+		// The parse tables only have to be built when the grammar (or the way the tables are built) changed.
+		ParserDefinitionCache cache = new ParserDefinitionCache(
+				Path.of(System.getProperty("parsergenerator.cache", "target/parser-cache")));
+		ParserDefinition parserDefinition = ParserBuilder.builder(grammar)
+				.construction(construction)
+				.eliminateUnitProductions(true)
+				.metrics(metrics)
+				.cache(cache)
+				.build()
+				.createParserDefinition(orderedTerminalList);
+
+		if (verbose) {
+			int i = 0;
+			for (State state : parserDefinition.getStates()) {
+				System.out.println(String.format("%02d", i++) + " " + state);
+			}
+
+			System.out.println();
+			parserDefinition.getGotoTable().cellSet().forEach(cell -> System.out.println(cell.getRowKey() + " + " + cell.getColumnKey() + " --> " + cell.getValue()));
+
+			System.out.println();
+			parserDefinition.getActionTable().cellSet().forEach(cell -> System.out.println(cell.getRowKey() + " + " + cell.getColumnKey() + " --> " + cell.getValue()));
 		}
 
-		// From the canonical collection we create the goto table and the action table.
-		Table<State, NonTerminal, State> gotoTable = buildGotoTable(canonicalCollection);
-		Table<State, Terminal, Action> actionTable = buildActionTable(canonicalCollection);
+		BasicParserCodeGenerator codeGenerator = new BasicParserCodeGenerator();
+		codeGenerator.setProperties(new BasicParserCodeGenerator.Properties("Super", "test.parser", "test.lexer", true));
+		codeGenerator.setMetrics(metrics);
+		for (SourceFile<String> sourceFile : codeGenerator.generate(parserDefinition)) {
+			if (verbose) {
+				System.out.println("=============== " + sourceFile.getName() + " ===============");
+				System.out.println(sourceFile.getContents());
+			}
+			Path path = Path.of("src/test-out/java/", sourceFile.getName()).toAbsolutePath();
+			Files.createDirectories(path.getParent());
+			Files.write(path, sourceFile.getContents().getBytes(StandardCharsets.UTF_8));
+		}
 
-		System.out.println();
-		gotoTable.cellSet().forEach(cell -> System.out.println(cell.getRowKey() + " + " + cell.getColumnKey() + " --> " + cell.getValue()));
+		if (verbose) {
+			System.out.println();
+		}
+		System.out.println(metrics);
+		metrics.commit();
+	}
 
-		System.out.println();
-		actionTable.cellSet().forEach(cell -> System.out.println(cell.getRowKey() + " + " + cell.getColumnKey() + " --> " + cell.getValue()));
+	protected static Table<State, Terminal, Action> buildActionTable(Set<State> canonicalCollection) {
+		return buildActionTable(canonicalCollection, GenerationMetrics.disabled());
+	}
 
-		List<Terminal> orderedTerminalList = List.of(Terminal.EOF, new Terminal("PLUS"), new Terminal("TIMES"),
-				new Terminal("LEFT_PAREN"), new Terminal("RIGHT_PAREN"), new Terminal("NUMBER"));
-		ParserDefinition parserDefinition = new ParserDefinition(grammar, actionTable, gotoTable, orderedTerminalList);
-		CodeGenerator<BasicParserCodeGenerator.Properties, String> codeGenerator = new BasicParserCodeGenerator();
-		codeGenerator.setProperties(new BasicParserCodeGenerator.Properties("Super", "test.parser", "test.lexer"));
-		codeGenerator.generate(parserDefinition)
-				.forEach(f -> {
-					System.out.println("=============== " + f.getName() + " ===============");
-					System.out.println(f.getContents());
-					try {
-						Path path = Path.of("src/test-out/java/", f.getName()).toAbsolutePath();
-						Files.createDirectories(path.getParent());
-						Files.write(path, f.getContents().getBytes(StandardCharsets.UTF_8));
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				});
+	/**
+	 * Builds the action table and records the time that it took (including the detection of conflicts) and the
+	 * density of the table in the metrics. The columns of the table are the terminals that have at least one action.
+	 */
+	protected static Table<State, Terminal, Action> buildActionTable(Set<State> canonicalCollection,
+			GenerationMetrics metrics) {
+		Table<State, Terminal, Action> actionTable = metrics.time(GenerationMetrics.Phase.ACTION_TABLE, () -> {
+			Table<State, Terminal, Action> table = HashBasedTable.create();
+			for (State state : canonicalCollection) {
+				buildActionRow(state).forEach((terminal, action) -> table.put(state, terminal, action));
+			}
+			return table;
+		});
+		metrics.recordActionTable(actionTable.size(), canonicalCollection.size(), actionTable.columnKeySet().size());
+		return actionTable;
 	}
 
-	private static Table<State, Terminal, Action> buildActionTable(Set<State> canonicalCollection) {
-		Table<State, Terminal, Action> actionTable = HashBasedTable.create();
-		for (State state : canonicalCollection) {
+	/**
+	 * Builds the action table, where the rows of the states are built in parallel on the given pool, and records the
+	 * same metrics as {@link #buildActionTable(Set, GenerationMetrics)}.
+	 */
+	protected static Table<State, Terminal, Action> buildActionTable(Set<State> canonicalCollection, ForkJoinPool pool,
+			GenerationMetrics metrics) {
+		Table<State, Terminal, Action> actionTable = metrics.time(GenerationMetrics.Phase.ACTION_TABLE, () -> {
+			List<State> states = new ArrayList<>(canonicalCollection);
+			List<Map<Terminal, Action>> rows = pool.submit(() -> states.parallelStream()
+					.map(ParserBuilder::buildActionRow)
+					.collect(Collectors.toList()))
+					.join();
+
+			Table<State, Terminal, Action> table = HashBasedTable.create();
+			for (int i = 0; i < states.size(); i++) {
+				State state = states.get(i);
+				rows.get(i).forEach((terminal, action) -> table.put(state, terminal, action));
+			}
+			return table;
+		});
+		metrics.recordActionTable(actionTable.size(), canonicalCollection.size(), actionTable.columnKeySet().size());
+		return actionTable;
+	}
 
-			for (Symbol symbol : state.getTransitions().keySet()) {
-				if (symbol.isTerminal()) {
-					updateActionTable(actionTable, state, (Terminal)symbol,
-							Action.shift(state.getTransitions().get(symbol)));
-				}
+	private static Map<Terminal, Action> buildActionRow(State state) {
+		Map<Terminal, Action> row = new HashMap<>();
+
+		for (Symbol symbol : state.getTransitions().keySet()) {
+			if (symbol.isTerminal()) {
+				updateActionRow(row, state, (Terminal)symbol, Action.shift(state.getTransitions().get(symbol)));
 			}
+		}
 
-			for (Item item : state.getItems()) {
-				if (item.getExpectedSymbol() != null) {
-					continue;
-				}
+		for (Item item : state.getItems()) {
+			if (item.getExpectedSymbol() != null) {
+				continue;
+			}
 
-				if (item.getProduction().getLhs() == NonTerminal.START) {
-					updateActionTable(actionTable, state, Terminal.EOF, Action.accept());
-				} else {
-					updateActionTable(actionTable, state, item.getLookahead(), Action.reduce(item.getProduction()));
-				}
+			if (item.getProduction().getLhs() == NonTerminal.START) {
+				updateActionRow(row, state, Terminal.EOF, Action.accept());
+			} else {
+				updateActionRow(row, state, item.getLookahead(), Action.reduce(item.getProduction()));
 			}
 		}
-		return actionTable;
+		return row;
 	}
 
-	private static void updateActionTable(Table<State, Terminal, Action> actionTable, State state, Set<Terminal> terminals, Action action) {
+	private static void updateActionRow(Map<Terminal, Action> row, State state, Set<Terminal> terminals, Action action) {
 		for (Terminal terminal : terminals) {
-			updateActionTable(actionTable, state, terminal, action);
+			updateActionRow(row, state, terminal, action);
 		}
 	}
 
-	private static void updateActionTable(Table<State, Terminal, Action> actionTable, State state, Terminal terminal, Action action) {
-		Action currentAction = actionTable.get(state, terminal);
+	private static void updateActionRow(Map<Terminal, Action> row, State state, Terminal terminal, Action action) {
+		Action currentAction = row.get(terminal);
 		if (currentAction != null) {
 			throw new IllegalStateException("Grammar leads to a " + currentAction.getActionType() + "-" +
 					action.getActionType() + " conflict. State: " + state + ", terminal: " + terminal);
 		}
-		actionTable.put(state, terminal, action);
+		row.put(terminal, action);
 	}
 
 	protected static Table<State, NonTerminal, State> buildGotoTable(Set<State> canonicalCollection) {
-		Table<State, NonTerminal, State> gotoTable = HashBasedTable.create();
+		return buildGotoTable(canonicalCollection, GenerationMetrics.disabled());
+	}
+
+	protected static Table<State, NonTerminal, State> buildGotoTable(Set<State> canonicalCollection,
+			GenerationMetrics metrics) {
+		return metrics.time(GenerationMetrics.Phase.GOTO_TABLE, () -> {
+			Table<State, NonTerminal, State> gotoTable = HashBasedTable.create();
+			for (State state : canonicalCollection) {
+				buildGotoRow(state).forEach((nonTerminal, target) -> gotoTable.put(state, nonTerminal, target));
+			}
+			return gotoTable;
+		});
+	}
 
-		for (State state : canonicalCollection) {
-			for (Map.Entry<Symbol, State> entry : state.getTransitions().entrySet()) {
-				if (entry.getKey().isTerminal()) {
-					continue;
+	/**
+	 * Builds the goto table, where the rows of the states are built in parallel on the given pool, and records the
+	 * time that it took in the metrics.
+	 */
+	protected static Table<State, NonTerminal, State> buildGotoTable(Set<State> canonicalCollection, ForkJoinPool pool,
+			GenerationMetrics metrics) {
+		return metrics.time(GenerationMetrics.Phase.GOTO_TABLE, () -> {
+			List<State> states = new ArrayList<>(canonicalCollection);
+			List<Map<NonTerminal, State>> rows = pool.submit(() -> states.parallelStream()
+					.map(ParserBuilder::buildGotoRow)
+					.collect(Collectors.toList()))
+					.join();
+
+			Table<State, NonTerminal, State> gotoTable = HashBasedTable.create();
+			for (int i = 0; i < states.size(); i++) {
+				State state = states.get(i);
+				rows.get(i).forEach((nonTerminal, target) -> gotoTable.put(state, nonTerminal, target));
+			}
+			return gotoTable;
+		});
+	}
+
+	private static Map<NonTerminal, State> buildGotoRow(State state) {
+		Map<NonTerminal, State> row = new HashMap<>();
+		for (Map.Entry<Symbol, State> entry : state.getTransitions().entrySet()) {
+			if (entry.getKey().isTerminal()) {
+				continue;
+			}
+			row.put((NonTerminal)entry.getKey(), entry.getValue());
+		}
+		return row;
+	}
+
+	/**
+	 * Eliminates the reductions of unit productions (A -> B, which pass the node of B on as the node of A) from the
+	 * parse tables, in place.
+	 *
+	 * When the goto of a state on B leads to a state that does nothing but reduce A -> B, the parser would pop that
+	 * state again and go to the goto of the same state on A. So the goto on B can lead to the goto on A directly, and
+	 * for layered (precedence) grammars this skips a cascade of reductions for every operand. The states that only
+	 * reduced a unit production are no longer reachable and are removed from the tables. Since such a state was only
+	 * reached after a reduction, an invalid next token is still detected before it is shifted.
+	 *
+	 * @return The number of states that were removed
+	 */
+	protected static int eliminateUnitProductions(Table<State, Terminal, Action> actionTable,
+			Table<State, NonTerminal, State> gotoTable) {
+		Map<State, Production> unitReductions = new HashMap<>();
+		for (Map.Entry<State, Map<Terminal, Action>> row : actionTable.rowMap().entrySet()) {
+			Production production = findOnlyReduction(row.getValue().values());
+			if (production != null && production.isAbstract()) {
+				unitReductions.put(row.getKey(), production);
+			}
+		}
+		if (unitReductions.isEmpty()) {
+			return 0;
+		}
+
+		for (Table.Cell<State, NonTerminal, State> cell : new ArrayList<>(gotoTable.cellSet())) {
+			State state = cell.getRowKey();
+			State target = cell.getValue();
+			// A chain of unit productions (A -> B, B -> C) is followed to its end. The set guards against cycles,
+			// although a grammar with a cycle of unit productions is ambiguous and has conflicts.
+			Set<State> visited = new HashSet<>();
+			while (unitReductions.containsKey(target) && visited.add(target)) {
+				State next = gotoTable.get(state, unitReductions.get(target).getLhs());
+				if (next == null) {
+					break;
 				}
-				gotoTable.put(state, (NonTerminal)entry.getKey(), entry.getValue());
+				target = next;
+			}
+			if (target != cell.getValue()) {
+				gotoTable.put(state, cell.getColumnKey(), target);
+			}
+		}
+
+		Set<State> reachable = new HashSet<>(gotoTable.values());
+		for (Action action : actionTable.values()) {
+			if (action.getActionType() == ActionType.SHIFT) {
+				reachable.add(action.getState());
 			}
 		}
+		int removed = 0;
+		for (State state : unitReductions.keySet()) {
+			if (!reachable.contains(state)) {
+				actionTable.row(state).clear();
+				gotoTable.row(state).clear();
+				removed++;
+			}
+		}
+		return removed;
+	}
 
-		return gotoTable;
+	/**
+	 * Returns the production that is reduced by all the actions, or null if not all actions reduce the same
+	 * production.
+	 */
+	private static Production findOnlyReduction(Collection<Action> actions) {
+		Production production = null;
+		for (Action action : actions) {
+			if (action.getActionType() != ActionType.REDUCE
+					|| production != null && !production.equals(action.getProduction())) {
+				return null;
+			}
+			production = action.getProduction();
+		}
+		return production;
 	}
 
 	protected static Set<State> createCanonicalCollection(Grammar grammar, Closer closer) {
-		// Note to self: previously I used a LinkedHashSet here so that I kept the insertion order. I don't fully
-		// remember why I did this, but I think it was because I used a rather sloppy technique to get the nextState if
-		// it was already contained in the canonical collection. See the commented code below in this method. I replaced
-		// this with a map that holds the transitions. Test to be sure!!!!
-		Set<State> canonicalCollection = Collections.newSetFromMap(new IdentityHashMap<>());
-		Map<State, State> internedStates = new HashMap<>();
-
-		Deque<State> workList = new ArrayDeque<>();
-
-		// Determine the state from which to start
-		State startState = new State(closer.closure(createStartKernel(grammar)));
-		internedStates.put(startState, startState);
-		canonicalCollection.add(startState);
-		workList.push(startState);
-
-		while (!workList.isEmpty()) {
-			State currentState = workList.pop();
-
-			// Find all new kernels
-			SetMultimap<Symbol, Item> kernels = HashMultimap.create();
-			for (Item item : currentState.getItems()) {
-				Symbol expectedSymbol = item.getExpectedSymbol();
-				if (expectedSymbol != null) {
-					kernels.put(expectedSymbol, item);
+		return createCanonicalCollection(grammar, closer, GenerationMetrics.disabled());
+	}
+
+	/**
+	 * Creates the canonical collection and records the time that it took, the number of states, the interning hit rate
+	 * and the peak number of items that were retained by the states in the metrics. The closures are recorded by the
+	 * closer itself.
+	 */
+	protected static Set<State> createCanonicalCollection(Grammar grammar, Closer closer, GenerationMetrics metrics) {
+		return metrics.time(GenerationMetrics.Phase.COLLECTION, () -> {
+			// Note to self: previously I used a LinkedHashSet here so that I kept the insertion order. I don't fully
+			// remember why I did this, but I think it was because I used a rather sloppy technique to get the nextState
+			// if it was already contained in the canonical collection. See the commented code below in this method. I
+			// replaced this with a map that holds the transitions. Test to be sure!!!!
+			Set<State> canonicalCollection = Collections.newSetFromMap(new IdentityHashMap<>());
+			// The states are interned by their kernel; the closure of a kernel is only calculated if it is new.
+			Map<Set<Item>, State> internedStates = new HashMap<>();
+
+			Deque<State> workList = new ArrayDeque<>();
+
+			// Determine the state from which to start
+			Set<Item> startKernel = createStartKernel(grammar);
+			State startState = createState(closer.closure(startKernel), metrics);
+			internedStates.put(startKernel, startState);
+			canonicalCollection.add(startState);
+			workList.push(startState);
+
+			while (!workList.isEmpty()) {
+				State currentState = workList.pop();
+
+				for (Map.Entry<Symbol, Set<Item>> entry : createKernels(currentState).entrySet()) {
+					State nextState = internedStates.get(entry.getValue());
+					metrics.recordInterning(nextState != null);
+					if (nextState == null) {
+						// Create the next state by taking the closure of the kernel
+						nextState = createState(closer.closure(entry.getValue()), metrics);
+						internedStates.put(entry.getValue(), nextState);
+						canonicalCollection.add(nextState);
+						workList.push(nextState);
+					}
+					currentState.getTransitions().put(entry.getKey(), nextState);
 				}
+
+				// All transitions of the state are known, so we no longer need its closure.
+				freeze(currentState, grammar, metrics);
 			}
 
-			for (Symbol expectedSymbol : kernels.keySet()) {
-				Set<Item> kernelBase = kernels.get(expectedSymbol);
+			metrics.recordStateCount(canonicalCollection.size());
+			return canonicalCollection;
+		});
+	}
 
-				// Create new items for the kernel (increase the dot pointer).
-				Set<Item> kernel = kernelBase.stream()
-						.map(item -> new Item(item.getProduction(), item.getLookahead(), item.getPosition() + 1))
-						.collect(Collectors.toSet());
+	private static State createState(Set<Item> closure, GenerationMetrics metrics) {
+		metrics.retainItems(closure.size());
+		return new State(closure);
+	}
 
-				// Create the next state by taking the closure of the kernel
-				State nextState = internedStates.computeIfAbsent(new State(closer.closure(kernel)), Function.identity());
+	private static void freeze(State state, Grammar grammar, GenerationMetrics metrics) {
+		int closureSize = state.getItems().size();
+		state.freeze(grammar);
+		if (metrics.isEnabled()) {
+			metrics.retainItems(state.getItems().size() - closureSize);
+		}
+	}
 
-				if (canonicalCollection.add(nextState)) {
-					workList.push(nextState);
+	/**
+	 * Creates the canonical collection, where the successor kernels of all states that were found in the previous
+	 * round are closed concurrently on the given pool. The states are interned through a concurrent map.
+	 *
+	 * The collection is built breadth first and, after every round, the new states are added in the order of their
+	 * predecessor and the name of the transition symbol. This makes the order of the returned collection (and thus the
+	 * state numbering) independent of the scheduling of the tasks. Note that the closer must be thread safe.
+	 *
+	 * The same metrics are recorded as by {@link #createCanonicalCollection(Grammar, Closer, GenerationMetrics)}. The
+	 * successors are recorded when they are added to the collection after each round, so the peak of the retained
+	 * items does not include the closures of the round that is in progress.
+	 */
+	protected static Set<State> createCanonicalCollection(Grammar grammar, Closer closer, ForkJoinPool pool,
+			GenerationMetrics metrics) {
+		return metrics.time(GenerationMetrics.Phase.COLLECTION, () -> {
+			Set<State> canonicalCollection = new LinkedHashSet<>();
+			ConcurrentMap<Set<Item>, State> internedStates = new ConcurrentHashMap<>();
+
+			Set<Item> startKernel = createStartKernel(grammar);
+			State startState = createState(closer.closure(startKernel), metrics);
+			internedStates.put(startKernel, startState);
+			canonicalCollection.add(startState);
+
+			List<State> frontier = List.of(startState);
+			while (!frontier.isEmpty()) {
+				List<State> currentFrontier = frontier;
+				List<Map<Symbol, State>> successors = pool.submit(() -> currentFrontier.parallelStream()
+						.map(state -> createSuccessors(state, closer, internedStates))
+						.collect(Collectors.toList()))
+						.join();
+
+				List<State> nextFrontier = new ArrayList<>();
+				for (int i = 0; i < currentFrontier.size(); i++) {
+					State currentState = currentFrontier.get(i);
+					for (Map.Entry<Symbol, State> entry : successors.get(i).entrySet()) {
+						boolean isNew = canonicalCollection.add(entry.getValue());
+						metrics.recordInterning(!isNew);
+						if (isNew) {
+							metrics.retainItems(entry.getValue().getItems().size());
+							nextFrontier.add(entry.getValue());
+						}
+						currentState.getTransitions().put(entry.getKey(), entry.getValue());
+					}
+					freeze(currentState, grammar, metrics);
 				}
-				currentState.getTransitions().put(expectedSymbol, nextState);
+				frontier = nextFrontier;
 			}
+
+			metrics.recordStateCount(canonicalCollection.size());
+			return canonicalCollection;
+		});
+	}
+
+	private static Map<Symbol, State> createSuccessors(State state, Closer closer,
+			ConcurrentMap<Set<Item>, State> internedStates) {
+		Map<Symbol, State> successors = new LinkedHashMap<>();
+		for (Map.Entry<Symbol, Set<Item>> entry : createKernels(state).entrySet()) {
+			State successor = internedStates.get(entry.getValue());
+			if (successor == null) {
+				// The kernel is closed outside of the map, so that the tasks do not block each other on its bins. When
+				// two tasks close the same kernel at the same time, the state of the first one is kept.
+				State closedState = new State(closer.closure(entry.getValue()));
+				successor = internedStates.putIfAbsent(entry.getValue(), closedState);
+				if (successor == null) {
+					successor = closedState;
+				}
+			}
+			successors.put(entry.getKey(), successor);
 		}
-		return canonicalCollection;
+		return successors;
 	}
 
-	private static Set<Item> createStartKernel(Grammar grammar) {
+	/**
+	 * Creates the kernels of the successors of the given state, ordered by the name of the transition symbol.
+	 */
+	static Map<Symbol, Set<Item>> createKernels(State state) {
+		Map<Symbol, Set<Item>> kernels = new TreeMap<>(Comparator.comparing(Symbol::getName));
+		for (Item item : state.getItems()) {
+			Symbol expectedSymbol = item.getExpectedSymbol();
+			if (expectedSymbol != null) {
+				// Create new items for the kernel (increase the dot pointer).
+				kernels.computeIfAbsent(expectedSymbol, symbol -> new HashSet<>())
+						.add(new Item(item.getProduction(), item.getLookahead(), item.getPosition() + 1));
+			}
+		}
+		return kernels;
+	}
+
+	/**
+	 * Creates the canonical collection for the grammar, reusing the closures of the states of the canonical collection
+	 * that was created for a previous version of the grammar where the edits to the grammar allow this.
+	 */
+	protected static Set<State> updateCanonicalCollection(Grammar previousGrammar, Set<State> previousCollection,
+			Grammar grammar, Closer closer) {
+		return new IncrementalCollectionBuilder(previousGrammar, previousCollection, grammar, closer).build();
+	}
+
+	/**
+	 * Creates the LALR(1) collection for the grammar. This collection has as many states as the LR(0) automaton, but
+	 * may contain (reduce-reduce) conflicts that the canonical collection does not have.
+	 */
+	protected static Set<State> createLalrCollection(Grammar grammar) {
+		return new LalrCollectionBuilder(grammar).build();
+	}
+
+	/**
+	 * Creates a minimal LR(1) collection for the grammar by merging weakly compatible states (with the same LR(0) core)
+	 * during the construction. This collection has no conflicts that the canonical collection does not have.
+	 */
+	protected static Set<State> createMinimalCollection(Grammar grammar, Closer closer) {
+		return new PagerCollectionBuilder(grammar, closer).build();
+	}
+
+	static Set<Item> createStartKernel(Grammar grammar) {
 		Set<Production> startProductions = grammar.getProductions(grammar.getSentenceSymbol());
 		// Note that while we do a stream here and collect to a set, we only expect the set of "start productions" to
 		// contain one element.
+		LookaheadSet lookahead = grammar.getLookaheadSetFactory().of(Terminal.EOF);
 		return startProductions.stream()
-				.map(startProduction -> new Item(startProduction, Set.of(Terminal.EOF), 0))
+				.map(startProduction -> new Item(startProduction, lookahead, 0))
 				.collect(Collectors.toSet());
 	}
+
+	public static class Builder {
+
+		private final Grammar grammar;
+
+		private Construction construction = Construction.CANONICAL;
+
+		private boolean eliminateUnitProductions;
+
+		private GenerationMetrics metrics = GenerationMetrics.disabled();
+
+		private ForkJoinPool pool;
+
+		private Grammar previousGrammar;
+
+		private Set<State> previousCollection;
+
+		private ParserDefinitionCache cache;
+
+		private Builder(Grammar grammar) {
+			this.grammar = grammar;
+		}
+
+		/**
+		 * Sets the construction of the collection of states; {@link Construction#CANONICAL} by default.
+		 */
+		public Builder construction(Construction construction) {
+			this.construction = construction;
+			return this;
+		}
+
+		/**
+		 * Sets whether the reductions of unit productions are eliminated from the parse tables (see
+		 * {@link #eliminateUnitProductions(Table, Table)}); they are not by default.
+		 */
+		public Builder eliminateUnitProductions(boolean eliminateUnitProductions) {
+			this.eliminateUnitProductions = eliminateUnitProductions;
+			return this;
+		}
+
+		/**
+		 * Sets the metrics in which the construction is recorded. The parallel and incremental constructions only
+		 * record the closures.
+		 */
+		public Builder metrics(GenerationMetrics metrics) {
+			this.metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * Sets the pool on which the canonical collection and the parse tables are built in parallel.
+		 */
+		public Builder pool(ForkJoinPool pool) {
+			this.pool = pool;
+			return this;
+		}
+
+		/**
+		 * Sets the canonical collection of a previous version of the grammar, from which the canonical collection is
+		 * updated instead of created from scratch (see {@link IncrementalCollectionBuilder}).
+		 */
+		public Builder previousCollection(Grammar previousGrammar, Set<State> previousCollection) {
+			this.previousGrammar = previousGrammar;
+			this.previousCollection = previousCollection;
+			return this;
+		}
+
+		/**
+		 * Sets the cache from which the parser definition is loaded, and in which it is stored when it is not cached
+		 * yet.
+		 */
+		public Builder cache(ParserDefinitionCache cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		public ParserBuilder build() {
+			if (previousCollection != null && construction != Construction.CANONICAL) {
+				throw new IllegalStateException("Only the canonical collection can be updated from a previous collection");
+			}
+			return new ParserBuilder(this);
+		}
+	}
 }
@@ -18,20 +18,35 @@ public class Production {
 
     private final boolean isBinary;
 
+    /**
+     * The index of the production within its grammar, or -1 if the production is not (yet) part of a grammar.
+     */
+    private final int id;
+
+    private final int hashCode;
+
     public Production(NonTerminal lhs, List<Symbol> rhs, List<String> rhsNames, String nodeName, boolean isBinary) {
+        this(lhs, rhs, rhsNames, nodeName, isBinary, -1);
+    }
+
+    Production(NonTerminal lhs, List<Symbol> rhs, List<String> rhsNames, String nodeName, boolean isBinary, int id) {
         this.lhs = lhs;
         this.rhs = rhs;
         this.rhsNames = rhsNames;
         this.nodeName = nodeName;
         this.isBinary = isBinary;
+        this.id = id;
+        this.hashCode = 31 * lhs.hashCode() + rhs.hashCode();
     }
 
-    public Production(Production production, NonTerminal lhs, List<Symbol> rhs) {
+    public Production(Production production, NonTerminal lhs, List<Symbol> rhs, int id) {
         this.lhs = lhs;
         this.rhs = rhs;
         this.nodeName = production.nodeName;
         this.isBinary = production.isBinary;
         this.rhsNames = production.rhsNames;
+        this.id = id;
+        this.hashCode = 31 * lhs.hashCode() + rhs.hashCode();
     }
 
     @Override
@@ -46,15 +61,14 @@ public class Production {
 
         Production that = (Production) o;
 
+        if (hashCode != that.hashCode) return false;
         if (!lhs.equals(that.lhs)) return false;
         return rhs.equals(that.rhs);
     }
 
     @Override
     public int hashCode() {
-        int result = lhs.hashCode();
-        result = 31 * result + rhs.hashCode();
-        return result;
+        return hashCode;
     }
 
     public NonTerminal getLhs() {
@@ -73,11 +87,19 @@ public class Production {
         return isBinary;
     }
 
+    /**
+     * Returns whether this is a unit production (A -> B without a node name), which creates no node of its own but
+     * passes the node of its rhs on. A named production with a single non-terminal creates a node with one child.
+     */
     public boolean isAbstract() {
-        return rhs.size() == 1 && !rhs.get(0).isTerminal();
+        return rhs.size() == 1 && !rhs.get(0).isTerminal() && nodeName == null;
     }
 
     public List<String> getRhsNames() {
         return rhsNames;
     }
+
+    public int getId() {
+        return id;
+    }
 }
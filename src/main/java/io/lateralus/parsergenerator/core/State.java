@@ -1,7 +1,15 @@
 package io.lateralus.parsergenerator.core;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -10,17 +18,60 @@ import java.util.stream.Collectors;
  *
  * The states and the state machine are created as part of the canonical collection (CC) and are used as a state-machine
  * by the parser.
+ *
+ * A state is identified by its kernel; the items of which the dot pointer is not at the start of the production (and
+ * the items of the augmentation rule). The other items of the closure follow from the kernel. While the collection is
+ * constructed a state holds the full closure and its transitions can be added. Once its transitions are known the state
+ * is frozen (see {@link #freeze(Grammar)}); it then only retains the kernel and the items that lead to a reduction,
+ * which is all that is needed to build the parse tables, and its transitions are stored in arrays that are sorted by
+ * the index of the transition symbol.
  */
 public class State {
 
-	private final Set<Item> items;
+	private final Set<Item> kernel;
+
+	private final int hashCode;
 
-	private final Map<Symbol, State> transitions = new HashMap<>();
+	private Set<Item> items;
+
+	private Map<Symbol, State> transitions = new HashMap<>();
 
 	public State(Set<Item> items) {
+		this.kernel = items.stream()
+				.filter(item -> item.getPosition() > 0 || item.getProduction().getLhs() == NonTerminal.START)
+				.collect(ImmutableSet.toImmutableSet());
+		this.hashCode = kernel.hashCode();
 		this.items = items;
 	}
 
+	/**
+	 * Freezes the state into its compact form. After this the items of the state are its kernel items and the items
+	 * that lead to a reduction, and the transitions can no longer be changed.
+	 */
+	void freeze(Grammar grammar) {
+		if (transitions instanceof FrozenTransitions) {
+			return;
+		}
+
+		Set<Item> reduceItems = items.stream()
+				.filter(item -> item.getExpectedSymbol() == null && !kernel.contains(item))
+				.collect(ImmutableSet.toImmutableSet());
+		items = reduceItems.isEmpty() ? kernel : Sets.union(kernel, reduceItems);
+
+		int[] symbolIndices = new int[transitions.size()];
+		int i = 0;
+		for (Symbol symbol : transitions.keySet()) {
+			symbolIndices[i++] = grammar.symbolIndex(symbol);
+		}
+		Arrays.sort(symbolIndices);
+
+		State[] targets = new State[symbolIndices.length];
+		for (i = 0; i < symbolIndices.length; i++) {
+			targets[i] = transitions.get(grammar.symbol(symbolIndices[i]));
+		}
+		transitions = new FrozenTransitions(grammar, symbolIndices, targets);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -28,12 +79,12 @@ public class State {
 
 		State state = (State) o;
 
-		return items.equals(state.items);
+		return hashCode == state.hashCode && kernel.equals(state.kernel);
 	}
 
 	@Override
 	public int hashCode() {
-		return items.hashCode();
+		return hashCode;
 	}
 
 	@Override
@@ -44,11 +95,90 @@ public class State {
 		return "{" + itemsString + "}";
 	}
 
+	public Set<Item> getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Returns the items of the state; the full closure while the state is constructed and the kernel and reduce items
+	 * once it is frozen.
+	 */
 	public Set<Item> getItems() {
 		return items;
 	}
 
+	/**
+	 * Returns the transitions of the state. Once the state is frozen the returned map is read only.
+	 */
 	public Map<Symbol, State> getTransitions() {
 		return transitions;
 	}
+
+	/**
+	 * Read only map view on the transitions of a frozen state. The transitions are stored in two arrays that are sorted
+	 * by the index of the symbol, so a lookup is a binary search.
+	 */
+	private static class FrozenTransitions extends AbstractMap<Symbol, State> {
+		private final Grammar grammar;
+		private final int[] symbolIndices;
+		private final State[] targets;
+
+		private FrozenTransitions(Grammar grammar, int[] symbolIndices, State[] targets) {
+			this.grammar = grammar;
+			this.symbolIndices = symbolIndices;
+			this.targets = targets;
+		}
+
+		@Override
+		public State get(Object key) {
+			if (!(key instanceof Symbol)) {
+				return null;
+			}
+			int index = Arrays.binarySearch(symbolIndices, grammar.symbolIndex((Symbol)key));
+			return index < 0 ? null : targets[index];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return symbolIndices.length;
+		}
+
+		@Override
+		public Set<Entry<Symbol, State>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public Iterator<Entry<Symbol, State>> iterator() {
+					return new Iterator<>() {
+						private int next = 0;
+
+						@Override
+						public boolean hasNext() {
+							return next < symbolIndices.length;
+						}
+
+						@Override
+						public Entry<Symbol, State> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							Entry<Symbol, State> entry = new SimpleImmutableEntry<>(grammar.symbol(symbolIndices[next]),
+									targets[next]);
+							next++;
+							return entry;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return symbolIndices.length;
+				}
+			};
+		}
+	}
 }
@@ -5,6 +5,12 @@ package io.lateralus.parsergenerator.core;
  *
  * The reason that was chosen for subclassing instead of only a boolean or a {@code SymbolType} is that now the compiler
  * helps finding mistakes.
+ *
+ * The symbols of a {@link Grammar} have a dense id; the terminals are numbered 0 .. |terminals| and the non-terminals
+ * 0 .. |non-terminals|. The ids are assigned when the grammar is built (on copies of the symbols that were added to the
+ * builder), so that the core algorithms can use arrays instead of maps. The ids of EOF, EPSILON and START are fixed.
+ * Symbols that are not part of a grammar have id -1. Equality is still based on the name, so that the symbols of
+ * different grammars can be compared.
  */
 public abstract class Symbol {
 
@@ -12,9 +18,19 @@ public abstract class Symbol {
 
     private final String name;
 
+    private final int id;
+
+    private final int hashCode;
+
     public Symbol(boolean isTerminal, String name) {
+        this(isTerminal, name, -1);
+    }
+
+    Symbol(boolean isTerminal, String name, int id) {
         this.isTerminal = isTerminal;
         this.name = name;
+        this.id = id;
+        this.hashCode = name.hashCode();
     }
 
     @Override
@@ -22,12 +38,12 @@ public abstract class Symbol {
         if (this == o) return true;
         if (!(o instanceof Symbol)) return false;
         Symbol symbol = (Symbol) o;
-        return name.equals(symbol.name);
+        return hashCode == symbol.hashCode && name.equals(symbol.name);
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return hashCode;
     }
 
     @Override
@@ -42,4 +58,8 @@ public abstract class Symbol {
     public String getName() {
         return name;
     }
+
+    public int getId() {
+        return id;
+    }
 }
@@ -5,10 +5,19 @@ package io.lateralus.parsergenerator.core;
  */
 public class Terminal extends Symbol {
 
-    public static final Terminal EPSILON = new Terminal("ε");
-    public static final Terminal EOF = new Terminal("EOF");
+    public static final Terminal EOF = new Terminal("EOF", 0);
+    public static final Terminal EPSILON = new Terminal("ε", 1);
+
+    /**
+     * The number of terminal ids that are reserved for EOF and EPSILON.
+     */
+    static final int RESERVED_IDS = 2;
 
     public Terminal(String name) {
         super(true, name);
     }
+
+    Terminal(String name, int id) {
+        super(true, name, id);
+    }
 }
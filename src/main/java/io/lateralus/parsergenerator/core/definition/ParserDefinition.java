@@ -2,15 +2,36 @@ package io.lateralus.parsergenerator.core.definition;
 
 import com.google.common.collect.Table;
 import io.lateralus.parsergenerator.core.Action;
+import io.lateralus.parsergenerator.core.ActionType;
 import io.lateralus.parsergenerator.core.Grammar;
+import io.lateralus.parsergenerator.core.Item;
 import io.lateralus.parsergenerator.core.NonTerminal;
+import io.lateralus.parsergenerator.core.Production;
 import io.lateralus.parsergenerator.core.State;
+import io.lateralus.parsergenerator.core.Symbol;
 import io.lateralus.parsergenerator.core.Terminal;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * The definition of a parser; the grammar and the parse tables that are built from it.
+ *
+ * The states of the parser are numbered breadth-first from the start state, where the transitions of a state are
+ * followed in the order of the names of their symbols (first the shifts, then the gotos). So the numbering only depends
+ * on the grammar and not on the order in which the states were created, and the start state is always state 0.
+ */
 public class ParserDefinition {
 
+	private static final Comparator<Map.Entry<? extends Symbol, ?>> BY_SYMBOL_NAME =
+			Comparator.comparing(entry -> entry.getKey().getName());
+
 	private final Grammar grammar;
 
 	private final Table<State, Terminal, Action> actionTable;
@@ -19,14 +40,106 @@ public class ParserDefinition {
 
 	private final List<Terminal> orderedTerminalList;
 
+	private final List<State> states;
+
+	private final Map<State, Integer> stateNumbers;
+
+	private final Map<State, Production> defaultReductions;
+
 	public ParserDefinition(Grammar grammar,
 			Table<State, Terminal, Action> actionTable,
             Table<State, NonTerminal, State> gotoTable,
             List<Terminal> orderedTerminalList) {
+		this(grammar, actionTable, gotoTable, orderedTerminalList, numberStates(actionTable, gotoTable));
+	}
+
+	/**
+	 * Creates a parser definition of which the states are already numbered, for instance because it was read back from
+	 * a {@link ParserDefinitionSerializer serialized} form.
+	 */
+	public ParserDefinition(Grammar grammar,
+			Table<State, Terminal, Action> actionTable,
+			Table<State, NonTerminal, State> gotoTable,
+			List<Terminal> orderedTerminalList,
+			List<State> states) {
 		this.grammar = grammar;
 		this.actionTable = actionTable;
 		this.gotoTable = gotoTable;
 		this.orderedTerminalList = orderedTerminalList;
+		this.states = Collections.unmodifiableList(new ArrayList<>(states));
+		this.stateNumbers = new HashMap<>();
+		for (int i = 0; i < states.size(); i++) {
+			stateNumbers.put(states.get(i), i);
+		}
+		this.defaultReductions = findDefaultReductions(actionTable);
+	}
+
+	private static List<State> numberStates(Table<State, Terminal, Action> actionTable,
+			Table<State, NonTerminal, State> gotoTable) {
+		State startState = actionTable.rowKeySet().stream()
+				.filter(ParserDefinition::isStartState)
+				.findFirst()
+				.orElseThrow(() -> new IllegalArgumentException("The action table does not contain the start state"));
+
+		List<State> states = new ArrayList<>();
+		Map<State, Integer> stateNumbers = new HashMap<>();
+		Deque<State> workList = new ArrayDeque<>();
+		stateNumbers.put(startState, 0);
+		states.add(startState);
+		workList.add(startState);
+
+		while (!workList.isEmpty()) {
+			State state = workList.pop();
+			List<State> successors = new ArrayList<>();
+			actionTable.row(state).entrySet().stream()
+					.filter(entry -> entry.getValue().getActionType() == ActionType.SHIFT)
+					.sorted(BY_SYMBOL_NAME)
+					.forEach(entry -> successors.add(entry.getValue().getState()));
+			gotoTable.row(state).entrySet().stream()
+					.sorted(BY_SYMBOL_NAME)
+					.forEach(entry -> successors.add(entry.getValue()));
+
+			for (State successor : successors) {
+				if (stateNumbers.putIfAbsent(successor, states.size()) == null) {
+					states.add(successor);
+					workList.add(successor);
+				}
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * Finds the consistent states; the states of which the only action (for every lookahead) is the reduction of a
+	 * single production. Such a state can reduce without looking at the next token: the reduction is done for every
+	 * valid next token, and for an invalid one the error is detected as soon as it must be shifted.
+	 */
+	private static Map<State, Production> findDefaultReductions(Table<State, Terminal, Action> actionTable) {
+		Map<State, Production> defaultReductions = new HashMap<>();
+		for (Map.Entry<State, Map<Terminal, Action>> row : actionTable.rowMap().entrySet()) {
+			Production production = null;
+			for (Action action : row.getValue().values()) {
+				if (action.getActionType() != ActionType.REDUCE
+						|| production != null && !production.equals(action.getProduction())) {
+					production = null;
+					break;
+				}
+				production = action.getProduction();
+			}
+			if (production != null) {
+				defaultReductions.put(row.getKey(), production);
+			}
+		}
+		return defaultReductions;
+	}
+
+	private static boolean isStartState(State state) {
+		for (Item item : state.getKernel()) {
+			if (item.getProduction().getLhs() == NonTerminal.START && item.getPosition() == 0) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public Grammar getGrammar() {
@@ -44,4 +157,27 @@ public class ParserDefinition {
 	public List<Terminal> getOrderedTerminalList() {
 		return orderedTerminalList;
 	}
+
+	/**
+	 * Returns the states of the parser ordered by their number.
+	 */
+	public List<State> getStates() {
+		return states;
+	}
+
+	/**
+	 * Returns the production that the state reduces regardless of the next token, or null if the state is not
+	 * consistent (i.e. it has shift actions or reduces different productions depending on the next token).
+	 */
+	public Production getDefaultReduction(State state) {
+		return defaultReductions.get(state);
+	}
+
+	/**
+	 * Returns the number of the state, or -1 if the state is not part of this parser definition.
+	 */
+	public int getStateNumber(State state) {
+		Integer number = stateNumbers.get(state);
+		return number == null ? -1 : number;
+	}
 }
@@ -0,0 +1,98 @@
+package io.lateralus.parsergenerator.core.definition;
+
+import com.google.common.hash.Hashing;
+import io.lateralus.parsergenerator.core.Grammar;
+import io.lateralus.parsergenerator.core.Terminal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * A content addressed cache of parser definitions in a local directory.
+ *
+ * A parser definition is stored under a key that is derived from the {@link Grammar#getFingerprint() fingerprint} of
+ * its grammar and a configuration; a free form description of everything else that influences the parse tables, for
+ * instance the kind of canonical collection that is built. So when neither the grammar nor the configuration changed,
+ * the parse tables do not have to be built again. Files that can not be read (e.g. because they are corrupt or were
+ * written by another version) are treated as a cache miss.
+ */
+public class ParserDefinitionCache {
+
+	private static final String EXTENSION = ".pdef";
+
+	private final Path directory;
+
+	public ParserDefinitionCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the parser definition of the grammar from the cache, or builds it with the given builder and stores it in
+	 * the cache when it is not cached yet. Storing is best effort; when the definition can not be stored (e.g. because
+	 * the directory is read-only or full) the built definition is returned all the same.
+	 */
+	public ParserDefinition get(Grammar grammar, String configuration, List<Terminal> orderedTerminalList,
+			Supplier<ParserDefinition> builder) {
+		Optional<ParserDefinition> cached = load(grammar, configuration, orderedTerminalList);
+		if (cached.isPresent()) {
+			return cached.get();
+		}
+		ParserDefinition parserDefinition = builder.get();
+		try {
+			store(parserDefinition, configuration);
+		} catch (IOException e) {
+			// The definition is built again next time.
+		}
+		return parserDefinition;
+	}
+
+	/**
+	 * Loads the parser definition of the grammar with the given configuration, if it is cached.
+	 */
+	public Optional<ParserDefinition> load(Grammar grammar, String configuration,
+			List<Terminal> orderedTerminalList) {
+		String key = key(grammar, configuration);
+		try (InputStream in = Files.newInputStream(path(key))) {
+			return Optional.of(ParserDefinitionSerializer.read(grammar, orderedTerminalList, key, in));
+		} catch (IOException e) {
+			// Either the definition is not cached, or it can not be read; in both cases it has to be built.
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Stores the parser definition under the given configuration. The definition is written to a temporary file that is
+	 * moved into place, so concurrent builds never see a partially written definition.
+	 */
+	public void store(ParserDefinition parserDefinition, String configuration) throws IOException {
+		String key = key(parserDefinition.getGrammar(), configuration);
+		Files.createDirectories(directory);
+		Path temporaryFile = Files.createTempFile(directory, key, ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temporaryFile)) {
+				ParserDefinitionSerializer.write(parserDefinition, key, out);
+			}
+			Files.move(temporaryFile, path(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporaryFile);
+		}
+	}
+
+	private Path path(String key) {
+		return directory.resolve(key + EXTENSION);
+	}
+
+	private static String key(Grammar grammar, String configuration) {
+		return Hashing.sha256()
+				.hashString(grammar.getFingerprint() + "\n" + configuration, StandardCharsets.UTF_8)
+				.toString();
+	}
+}
@@ -0,0 +1,250 @@
+package io.lateralus.parsergenerator.core.definition;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import io.lateralus.parsergenerator.core.Action;
+import io.lateralus.parsergenerator.core.ActionType;
+import io.lateralus.parsergenerator.core.Grammar;
+import io.lateralus.parsergenerator.core.Item;
+import io.lateralus.parsergenerator.core.LookaheadSetFactory;
+import io.lateralus.parsergenerator.core.NonTerminal;
+import io.lateralus.parsergenerator.core.Production;
+import io.lateralus.parsergenerator.core.State;
+import io.lateralus.parsergenerator.core.Terminal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes a {@link ParserDefinition} in a compact binary form and reads it back.
+ *
+ * The grammar itself is not written; the symbols and productions are written as their id in the grammar, so a
+ * definition can only be read back with the same grammar. To guarantee this the form starts with a key, which must
+ * contain the {@link Grammar#getFingerprint() fingerprint} of the grammar and is checked when the definition is read.
+ *
+ * The states are written in the order of their number, each as its kernel items (the production, the position of the
+ * dot pointer and the lookahead). The action and goto tables refer to states by their number. All ints are written as
+ * variable length ints, so most of them take a single byte. The form ends with a CRC-32 checksum of everything before
+ * it, so a corrupt definition is detected when it is read.
+ */
+public final class ParserDefinitionSerializer {
+
+	private static final int MAGIC = 0x4C504446;
+
+	private static final int VERSION = 1;
+
+	private ParserDefinitionSerializer() {
+	}
+
+	public static void write(ParserDefinition parserDefinition, String key, OutputStream outputStream)
+			throws IOException {
+		Grammar grammar = parserDefinition.getGrammar();
+		LookaheadSetFactory lookaheadSetFactory = grammar.getLookaheadSetFactory();
+		Map<NonTerminal, Integer> nonTerminalIds = new HashMap<>();
+		for (NonTerminal nonTerminal : orderedNonTerminals(grammar)) {
+			nonTerminalIds.put(nonTerminal, nonTerminalIds.size());
+		}
+
+		CRC32 checksum = new CRC32();
+		DataOutputStream out = new DataOutputStream(
+				new CheckedOutputStream(new BufferedOutputStream(outputStream), checksum));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeUTF(key);
+		writeVarInt(out, lookaheadSetFactory.size());
+		writeVarInt(out, nonTerminalIds.size());
+		writeVarInt(out, grammar.getProductions().size());
+
+		List<State> states = parserDefinition.getStates();
+		writeVarInt(out, states.size());
+		for (State state : states) {
+			writeVarInt(out, state.getKernel().size());
+			for (Item item : state.getKernel()) {
+				writeVarInt(out, item.getProduction().getId());
+				writeVarInt(out, item.getPosition());
+				writeVarInt(out, item.getLookahead().size());
+				for (Terminal terminal : item.getLookahead()) {
+					writeVarInt(out, lookaheadSetFactory.indexOf(terminal));
+				}
+			}
+		}
+
+		for (State state : states) {
+			Map<Terminal, Action> actionRow = parserDefinition.getActionTable().row(state);
+			writeVarInt(out, actionRow.size());
+			for (Map.Entry<Terminal, Action> entry : actionRow.entrySet()) {
+				Action action = entry.getValue();
+				writeVarInt(out, lookaheadSetFactory.indexOf(entry.getKey()));
+				out.writeByte(action.getActionType().ordinal());
+				if (action.getActionType() == ActionType.SHIFT) {
+					writeVarInt(out, parserDefinition.getStateNumber(action.getState()));
+				} else if (action.getActionType() == ActionType.REDUCE) {
+					writeVarInt(out, action.getProduction().getId());
+				}
+			}
+
+			Map<NonTerminal, State> gotoRow = parserDefinition.getGotoTable().row(state);
+			writeVarInt(out, gotoRow.size());
+			for (Map.Entry<NonTerminal, State> entry : gotoRow.entrySet()) {
+				writeVarInt(out, nonTerminalIds.get(entry.getKey()));
+				writeVarInt(out, parserDefinition.getStateNumber(entry.getValue()));
+			}
+		}
+		out.writeInt((int)checksum.getValue());
+		out.flush();
+	}
+
+	/**
+	 * Reads a parser definition for the given grammar. The states of the definition only hold their kernel items, which
+	 * is enough to identify them (see {@link State}).
+	 *
+	 * @throws IOException When the input can not be read, is corrupt, is not a serialized parser definition, or when it
+	 *                     was written with another key
+	 */
+	public static ParserDefinition read(Grammar grammar, List<Terminal> orderedTerminalList, String key,
+			InputStream inputStream) throws IOException {
+		LookaheadSetFactory lookaheadSetFactory = grammar.getLookaheadSetFactory();
+		List<NonTerminal> nonTerminals = orderedNonTerminals(grammar);
+		Production[] productions = grammar.getProductions().stream()
+				.sorted(Comparator.comparingInt(Production::getId))
+				.toArray(Production[]::new);
+
+		// The checksum is verified before anything is decoded, so the counts in a corrupt definition are never used to
+		// allocate or loop.
+		byte[] bytes = inputStream.readAllBytes();
+		if (bytes.length < Integer.BYTES) {
+			throw new IOException("The serialized parser definition is corrupt");
+		}
+		int length = bytes.length - Integer.BYTES;
+		CRC32 checksum = new CRC32();
+		checksum.update(bytes, 0, length);
+		if (ByteBuffer.wrap(bytes, length, Integer.BYTES).getInt() != (int)checksum.getValue()) {
+			throw new IOException("The serialized parser definition is corrupt");
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+		try {
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				throw new IOException("The input is not a serialized parser definition of a supported version");
+			}
+			if (!in.readUTF().equals(key)) {
+				throw new IOException("The parser definition was written for another key");
+			}
+			if (readVarInt(in) != lookaheadSetFactory.size()
+					|| readVarInt(in) != nonTerminals.size()
+					|| readVarInt(in) != productions.length) {
+				throw new IOException("The parser definition was written for another grammar");
+			}
+
+			State[] states = new State[readCount(in)];
+			for (int i = 0; i < states.length; i++) {
+				Set<Item> kernel = new HashSet<>();
+				int kernelSize = readCount(in);
+				for (int j = 0; j < kernelSize; j++) {
+					Production production = productions[readVarInt(in)];
+					int position = readVarInt(in);
+					List<Terminal> lookahead = new ArrayList<>();
+					int lookaheadSize = readCount(in);
+					for (int k = 0; k < lookaheadSize; k++) {
+						lookahead.add(lookaheadSetFactory.terminal(readVarInt(in)));
+					}
+					kernel.add(new Item(production, lookaheadSetFactory.of(lookahead), position));
+				}
+				states[i] = new State(kernel);
+			}
+
+			Table<State, Terminal, Action> actionTable = HashBasedTable.create();
+			Table<State, NonTerminal, State> gotoTable = HashBasedTable.create();
+			ActionType[] actionTypes = ActionType.values();
+			for (State state : states) {
+				int actionCount = readCount(in);
+				for (int j = 0; j < actionCount; j++) {
+					Terminal terminal = lookaheadSetFactory.terminal(readVarInt(in));
+					switch (actionTypes[in.readByte()]) {
+						case SHIFT:
+							actionTable.put(state, terminal, Action.shift(states[readVarInt(in)]));
+							break;
+						case REDUCE:
+							actionTable.put(state, terminal, Action.reduce(productions[readVarInt(in)]));
+							break;
+						case ACCEPT:
+							actionTable.put(state, terminal, Action.accept());
+							break;
+					}
+				}
+
+				int gotoCount = readCount(in);
+				for (int j = 0; j < gotoCount; j++) {
+					NonTerminal nonTerminal = nonTerminals.get(readVarInt(in));
+					gotoTable.put(state, nonTerminal, states[readVarInt(in)]);
+				}
+			}
+
+			if (in.available() != 0) {
+				throw new IOException("The serialized parser definition is corrupt");
+			}
+			return new ParserDefinition(grammar, actionTable, gotoTable, orderedTerminalList, List.of(states));
+		} catch (RuntimeException e) {
+			// A definition with a valid checksum that still does not fit the grammar, e.g. an id that is out of range.
+			throw new IOException("The serialized parser definition is corrupt", e);
+		}
+	}
+
+	/**
+	 * Returns the non-terminals of the grammar, ordered by their id.
+	 */
+	private static List<NonTerminal> orderedNonTerminals(Grammar grammar) {
+		List<NonTerminal> nonTerminals = new ArrayList<>(grammar.getNonTerminals());
+		nonTerminals.sort(Comparator.comparingInt(NonTerminal::getId));
+		return nonTerminals;
+	}
+
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads the number of elements that follow. Every element takes at least one byte, so a count that exceeds the
+	 * remaining bytes is corrupt.
+	 */
+	private static int readCount(DataInputStream in) throws IOException {
+		int count = readVarInt(in);
+		if (count < 0 || count > in.available()) {
+			throw new IOException("The serialized parser definition is corrupt");
+		}
+		return count;
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("The serialized parser definition is corrupt");
+	}
+}
@@ -0,0 +1,283 @@
+package io.lateralus.parsergenerator.core.metrics;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects metrics while a parser is generated; the wall time per {@link Phase}, the number of closures and their
+ * size, the number of states, how often a kernel was already interned, the density of the action table and the peak
+ * number of items that were retained by the states of the collection under construction.
+ *
+ * The same data is emitted as JDK Flight Recorder events; a {@link PhaseEvent} for every phase and a
+ * {@link MetricsEvent} with a snapshot of the other metrics when {@link #commit()} is called.
+ *
+ * The metrics are thread safe. Use {@link #disabled()} for a collector that records nothing.
+ */
+public class GenerationMetrics {
+
+	public enum Phase {
+		/**
+		 * Calculating the nullable non-terminals and the first sets while building the grammar.
+		 */
+		FIRST_SETS,
+
+		/**
+		 * Precomputing the lookup tables of a closer.
+		 */
+		CLOSER,
+
+		/**
+		 * Creating the (canonical) collection of states; closing the kernels and interning the states.
+		 */
+		COLLECTION,
+
+		/**
+		 * Building the action table, including the detection of conflicts.
+		 */
+		ACTION_TABLE,
+
+		/**
+		 * Building the goto table.
+		 */
+		GOTO_TABLE,
+
+		/**
+		 * Rendering the templates of the generated code.
+		 */
+		CODE_GENERATION
+	}
+
+	private static final GenerationMetrics DISABLED = new GenerationMetrics(false);
+
+	private final boolean isEnabled;
+
+	private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+
+	private final LongAdder closureCount = new LongAdder();
+
+	private final LongAdder closureItemCount = new LongAdder();
+
+	private final LongAdder internedLookupCount = new LongAdder();
+
+	private final LongAdder internedHitCount = new LongAdder();
+
+	private final AtomicLong stateCount = new AtomicLong();
+
+	private final AtomicLong actionCount = new AtomicLong();
+
+	private final AtomicLong actionCellCount = new AtomicLong();
+
+	private final AtomicLong retainedItemCount = new AtomicLong();
+
+	private final AtomicLong peakRetainedItemCount = new AtomicLong();
+
+	public GenerationMetrics() {
+		this(true);
+	}
+
+	private GenerationMetrics(boolean isEnabled) {
+		this.isEnabled = isEnabled;
+		for (Phase phase : Phase.values()) {
+			phaseNanos.put(phase, new LongAdder());
+		}
+	}
+
+	/**
+	 * Returns a collector that records nothing and emits no events.
+	 */
+	public static GenerationMetrics disabled() {
+		return DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+
+	/**
+	 * Starts timing the phase. The phase ends when the returned timer is stopped, so stop it in a finally block. Use
+	 * {@link #time} when the phase is a single computation.
+	 */
+	public PhaseTimer startPhase(Phase phase) {
+		return isEnabled ? new PhaseTimer(this, phase) : PhaseTimer.NONE;
+	}
+
+	/**
+	 * Times the phase while the work is done.
+	 *
+	 * @return The result of the work
+	 */
+	public <T, X extends Exception> T time(Phase phase, PhaseWork<T, X> work) throws X {
+		PhaseTimer timer = startPhase(phase);
+		try {
+			return work.run();
+		} finally {
+			timer.stop();
+		}
+	}
+
+	/**
+	 * Records a closure that resulted in the given number of items.
+	 */
+	public void recordClosure(int itemCount) {
+		if (isEnabled) {
+			closureCount.increment();
+			closureItemCount.add(itemCount);
+		}
+	}
+
+	/**
+	 * Records a lookup of a kernel in the interned states, where a hit means that the state already existed and the
+	 * kernel did not have to be closed.
+	 */
+	public void recordInterning(boolean isHit) {
+		if (isEnabled) {
+			internedLookupCount.increment();
+			if (isHit) {
+				internedHitCount.increment();
+			}
+		}
+	}
+
+	public void recordStateCount(int count) {
+		if (isEnabled) {
+			stateCount.set(count);
+		}
+	}
+
+	/**
+	 * Records the size of the action table; the number of actions in a table with the given number of rows (states)
+	 * and columns (terminals).
+	 */
+	public void recordActionTable(int actions, int rows, int columns) {
+		if (isEnabled) {
+			actionCount.set(actions);
+			actionCellCount.set((long)rows * columns);
+		}
+	}
+
+	/**
+	 * Records that the given number of items is now retained (for a negative number released) by the states.
+	 */
+	public void retainItems(int itemCount) {
+		if (isEnabled) {
+			long retained = retainedItemCount.addAndGet(itemCount);
+			peakRetainedItemCount.accumulateAndGet(retained, Math::max);
+		}
+	}
+
+	public Duration getPhaseTime(Phase phase) {
+		return Duration.ofNanos(phaseNanos.get(phase).sum());
+	}
+
+	public long getClosureCount() {
+		return closureCount.sum();
+	}
+
+	public double getAverageItemsPerClosure() {
+		long closures = closureCount.sum();
+		return closures == 0 ? 0 : (double)closureItemCount.sum() / closures;
+	}
+
+	public long getStateCount() {
+		return stateCount.get();
+	}
+
+	/**
+	 * Returns the fraction of the kernel lookups for which the state already existed.
+	 */
+	public double getInterningHitRate() {
+		long lookups = internedLookupCount.sum();
+		return lookups == 0 ? 0 : (double)internedHitCount.sum() / lookups;
+	}
+
+	/**
+	 * Returns the fraction of the cells of the action table that contain an action.
+	 */
+	public double getActionTableDensity() {
+		long cells = actionCellCount.get();
+		return cells == 0 ? 0 : (double)actionCount.get() / cells;
+	}
+
+	public long getPeakRetainedItems() {
+		return peakRetainedItemCount.get();
+	}
+
+	/**
+	 * Emits a {@link MetricsEvent} with the current values of the metrics.
+	 */
+	public void commit() {
+		if (!isEnabled) {
+			return;
+		}
+		MetricsEvent event = new MetricsEvent();
+		if (event.shouldCommit()) {
+			event.closureCount = getClosureCount();
+			event.averageItemsPerClosure = getAverageItemsPerClosure();
+			event.stateCount = getStateCount();
+			event.interningHitRate = getInterningHitRate();
+			event.actionTableDensity = getActionTableDensity();
+			event.peakRetainedItems = getPeakRetainedItems();
+			event.commit();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Phase phase : Phase.values()) {
+			builder.append(String.format("%-16s %8.3f ms%n", phase, phaseNanos.get(phase).sum() / 1_000_000.0));
+		}
+		builder.append(String.format("closures         %8d (%.1f items on average)%n", getClosureCount(),
+				getAverageItemsPerClosure()));
+		builder.append(String.format("states           %8d (interning hit rate %.2f)%n", getStateCount(),
+				getInterningHitRate()));
+		builder.append(String.format("action density   %8.3f%n", getActionTableDensity()));
+		builder.append(String.format("peak items       %8d", getPeakRetainedItems()));
+		return builder.toString();
+	}
+
+	/**
+	 * The work of a phase that is timed by {@link #time}.
+	 */
+	@FunctionalInterface
+	public interface PhaseWork<T, X extends Exception> {
+		T run() throws X;
+	}
+
+	/**
+	 * Times a phase and emits a {@link PhaseEvent} for it when it is stopped.
+	 */
+	public static final class PhaseTimer {
+
+		private static final PhaseTimer NONE = new PhaseTimer(null, null);
+
+		private final GenerationMetrics metrics;
+
+		private final Phase phase;
+
+		private final PhaseEvent event = new PhaseEvent();
+
+		private final long start;
+
+		private PhaseTimer(GenerationMetrics metrics, Phase phase) {
+			this.metrics = metrics;
+			this.phase = phase;
+			if (phase != null) {
+				event.phase = phase.name();
+				event.begin();
+			}
+			start = System.nanoTime();
+		}
+
+		public void stop() {
+			if (metrics == null) {
+				return;
+			}
+			metrics.phaseNanos.get(phase).add(System.nanoTime() - start);
+			event.commit();
+		}
+	}
+}
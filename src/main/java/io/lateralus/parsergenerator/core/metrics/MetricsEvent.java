@@ -0,0 +1,38 @@
+package io.lateralus.parsergenerator.core.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+
+/**
+ * JDK Flight Recorder event with a snapshot of the {@link GenerationMetrics}.
+ */
+@Name("io.lateralus.parsergenerator.Metrics")
+@Label("Parser Generator Metrics")
+@Category("Parser Generator")
+@Description("The metrics of a parser generation")
+class MetricsEvent extends Event {
+
+	@Label("Closures")
+	long closureCount;
+
+	@Label("Average Items per Closure")
+	double averageItemsPerClosure;
+
+	@Label("States")
+	long stateCount;
+
+	@Label("Interning Hit Rate")
+	@Percentage
+	double interningHitRate;
+
+	@Label("Action Table Density")
+	@Percentage
+	double actionTableDensity;
+
+	@Label("Peak Retained Items")
+	long peakRetainedItems;
+}
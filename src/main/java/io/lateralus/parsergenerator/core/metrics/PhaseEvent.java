@@ -0,0 +1,21 @@
+package io.lateralus.parsergenerator.core.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for a phase of the parser generation; the duration of the event is the wall time of the
+ * phase.
+ */
+@Name("io.lateralus.parsergenerator.Phase")
+@Label("Parser Generator Phase")
+@Category("Parser Generator")
+@Description("A phase of the parser generation")
+class PhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+}
@@ -1,4 +1,52 @@
 package ${parserPackageName}.nodes;
 
 public abstract class BaseNode implements Node {
+
+	private int production;
+
+	private int startState;
+
+	private int tokenCount;
+
+	/**
+	 * Records how the node was parsed, so a reparse can reuse it. This is called by the parser when it creates the node.
+	 */
+	public final void setParseInfo(int production, int startState, int tokenCount) {
+		this.production = production;
+		this.startState = startState;
+		this.tokenCount = tokenCount;
+	}
+
+	/**
+	 * Returns the id of the production that created the node.
+	 */
+	public int getProduction() {
+		return production;
+	}
+
+	/**
+	 * Returns the state of the parser in which the node started.
+	 */
+	public int getStartState() {
+		return startState;
+	}
+
+	/**
+	 * Returns the number of tokens that the node spans. The node does not know the index of its first token, which is
+	 * the sum of the token counts of the nodes and tokens before it, so the node stays valid when the tokens before it
+	 * are edited.
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * Returns the number of children (tokens and nodes) of the node.
+	 */
+	public abstract int getChildCount();
+
+	/**
+	 * Returns the child (a token or a node) at the index, in the order of the rhs of the production of the node.
+	 */
+	public abstract Object getChild(int index);
 }
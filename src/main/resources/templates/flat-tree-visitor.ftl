@@ -0,0 +1,10 @@
+package ${parserPackageName}.visitor;
+
+import ${parserPackageName}.FlatTree;
+
+public interface FlatTreeVisitor<R, X extends VisitingException> {
+<#list nodeProductionTypes as nodeProductionType>
+	R visit${nodeProductionType}(FlatTree tree, int node) throws X;
+</#list>
+	R visitToken(FlatTree tree, int token) throws X;
+}
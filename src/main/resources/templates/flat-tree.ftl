@@ -0,0 +1,173 @@
+package ${parserPackageName};
+
+import ${parserPackageName}.visitor.FlatTreeVisitor;
+import ${parserPackageName}.visitor.VisitingException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * A tree of which the nodes are stored in parallel int buffers instead of in node objects, so a large tree consists of
+ * a few large blocks of memory that the garbage collector does not have to trace. The buffers are either arrays on the
+ * heap or direct (off-heap) memory.
+ *
+ * A node (or token) of the tree is an index in the buffers. Per node the buffers hold its kind (the id of the
+ * production that created it, or -1 - the ordinal of its token type for a token), its first child, its next sibling
+ * and the indices of its first token and of the token after its last token. The nodes are stored in the order in which
+ * they are parsed, so the children of a node precede it and the root is the last node.
+ */
+public final class FlatTree {
+
+	/**
+	 * The index of a child or sibling that does not exist.
+	 */
+	public static final int NONE = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final boolean direct;
+
+	private IntBuffer kinds;
+	private IntBuffer firstChildren;
+	private IntBuffer nextSiblings;
+	private IntBuffer tokenStarts;
+	private IntBuffer tokenEnds;
+
+	private int size;
+
+	FlatTree(boolean direct) {
+		this.direct = direct;
+		kinds = allocate(INITIAL_CAPACITY);
+		firstChildren = allocate(INITIAL_CAPACITY);
+		nextSiblings = allocate(INITIAL_CAPACITY);
+		tokenStarts = allocate(INITIAL_CAPACITY);
+		tokenEnds = allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Adds the token, which is the token at the index in the input.
+	 */
+	int addToken(int tokenType, int tokenIndex) {
+		return add(-1 - tokenType, NONE, tokenIndex, tokenIndex + 1);
+	}
+
+	/**
+	 * Adds the node that the production created from the nodes and tokens on the value stack, which are its children.
+	 * The tokens up to tokenEnd are parsed.
+	 */
+	int addNode(int production, int[] valueStack, int first, int childCount, int tokenEnd) {
+		if (childCount == 0) {
+			return add(production, NONE, tokenEnd, tokenEnd);
+		}
+		for (int i = first; i < first + childCount - 1; i++) {
+			nextSiblings.put(valueStack[i], valueStack[i + 1]);
+		}
+		return add(production, valueStack[first], tokenStarts.get(valueStack[first]), tokenEnd);
+	}
+
+	private int add(int kind, int firstChild, int tokenStart, int tokenEnd) {
+		if (size == kinds.capacity()) {
+			kinds = grow(kinds);
+			firstChildren = grow(firstChildren);
+			nextSiblings = grow(nextSiblings);
+			tokenStarts = grow(tokenStarts);
+			tokenEnds = grow(tokenEnds);
+		}
+		kinds.put(size, kind);
+		firstChildren.put(size, firstChild);
+		nextSiblings.put(size, NONE);
+		tokenStarts.put(size, tokenStart);
+		tokenEnds.put(size, tokenEnd);
+		return size++;
+	}
+
+	private IntBuffer allocate(int capacity) {
+		if (direct) {
+			return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		return IntBuffer.allocate(capacity);
+	}
+
+	private IntBuffer grow(IntBuffer buffer) {
+		IntBuffer grown = allocate(buffer.capacity() * 2);
+		grown.put(buffer.duplicate().limit(size));
+		return grown;
+	}
+
+	/**
+	 * Returns the number of nodes and tokens in the tree.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the root of the tree.
+	 */
+	public int getRoot() {
+		return size - 1;
+	}
+
+	/**
+	 * Returns the id of the production that created the node, or -1 - the ordinal of the token type of a token.
+	 */
+	public int getKind(int node) {
+		return kinds.get(node);
+	}
+
+	public boolean isToken(int node) {
+		return kinds.get(node) < 0;
+	}
+
+	/**
+	 * Returns the ordinal of the token type of the token.
+	 */
+	public int getTokenType(int token) {
+		return -1 - kinds.get(token);
+	}
+
+	public int getFirstChild(int node) {
+		return firstChildren.get(node);
+	}
+
+	public int getNextSibling(int node) {
+		return nextSiblings.get(node);
+	}
+
+	/**
+	 * Returns the child at the index, in the order of the rhs of the production of the node.
+	 */
+	public int getChild(int node, int index) {
+		int child = firstChildren.get(node);
+		for (int i = 0; i < index && child != NONE; i++) {
+			child = nextSiblings.get(child);
+		}
+		return child;
+	}
+
+	/**
+	 * Returns the index in the input of the first token of the node.
+	 */
+	public int getTokenStart(int node) {
+		return tokenStarts.get(node);
+	}
+
+	/**
+	 * Returns the index in the input of the token after the last token of the node.
+	 */
+	public int getTokenEnd(int node) {
+		return tokenEnds.get(node);
+	}
+
+	public <R, X extends VisitingException> R accept(int node, FlatTreeVisitor<R, X> visitor) throws X {
+		switch (kinds.get(node)) {
+<#list nodeProductions as nodeProduction>
+			case ${nodeProduction.production}:
+				return visitor.visit${nodeProduction.className}(this, node);
+</#list>
+			default:
+				return visitor.visitToken(this, node);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package ${parserPackageName};
+
+import ${lexerPackageName}.Token;
+
+/**
+ * Receives the events of {@link Parser#parse(ParseListener)}: every token that is shifted and every reduction of a
+ * production that creates a node, in the order of the parse (so the children of a node are reported before the node).
+ * Unit productions are not reported. All methods do nothing by default.
+ */
+public interface ParseListener {
+
+	default void shift(Token token) {
+	}
+<#list nodeProductionTypes as nodeProductionType>
+
+	default void reduce${nodeProductionType}() {
+	}
+</#list>
+}
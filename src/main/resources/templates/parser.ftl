@@ -3,54 +3,501 @@ package ${parserPackageName};
 import ${lexerPackageName}.Lexer;
 import ${lexerPackageName}.LexerException;
 import ${lexerPackageName}.Token;
-import ${parserPackageName}.Action.Accept;
-import ${parserPackageName}.Action.Reduce;
-import ${parserPackageName}.Action.Shift;
 import ${parserPackageName}.nodes.*;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class Parser {
 
-	private static Action[][] ACTION_TABLE = ${actionTableJava};
-	private static int[][] GOTO_TABLE;
+	/**
+	 * The actions are packed into ints. The lowest two bits hold the kind of the action and the other bits the target
+	 * state of a shift or the production of a reduction. An error is -1.
+	 */
+	private static final int ACTION_KIND_BITS = 2;
+	private static final int ACTION_KIND_MASK = (1 << ACTION_KIND_BITS) - 1;
+	private static final int SHIFT = 0;
+	private static final int REDUCE = 1;
+	private static final int ACCEPT = 2;
 
-	private final Lexer lexer;
+	/**
+	 * The action table (per state and terminal) and the goto table (per state and non-terminal) are compressed with
+	 * row displacement. The value of an entry is at BASE[row] + column if CHECK there holds the column, otherwise it is
+	 * the DEFAULT of the row. A consistent state, which reduces its default reduction regardless of the next token, has
+	 * an action base of -1.
+	 *
+	 * The tables are never modified, so all parsers on all threads share them.
+	 */
+	private static final int[] ACTION_BASE = ${actionBaseJava};
+	private static final int[] ACTION_CHECK = ${actionCheckJava};
+	private static final int[] ACTION_TABLE = ${actionTableJava};
+	private static final int[] ACTION_DEFAULT = ${actionDefaultJava};
 
+	private static final int[] GOTO_BASE = ${gotoBaseJava};
+	private static final int[] GOTO_CHECK = ${gotoCheckJava};
+	private static final int[] GOTO_TABLE = ${gotoTableJava};
+	private static final int[] GOTO_DEFAULT = ${gotoDefaultJava};
+
+	/**
+	 * Per production (by id) the number of symbols of its rhs and the column of its lhs in the goto table.
+	 */
+	private static final int[] RHS_SIZES = ${rhsSizesJava};
+	private static final int[] LHS_COLUMNS = ${lhsColumnsJava};
+
+	private static final int INITIAL_STACK_SIZE = 64;
+
+	/**
+	 * The parser of each thread of a batch parse, which is reused for all the inputs that the thread parses.
+	 */
+	private static final ThreadLocal<Parser> BATCH_PARSERS = ThreadLocal.withInitial(Parser::new);
+
+	private static final ParseListener NO_LISTENER = new ParseListener() { };
+
+	/**
+	 * The result of pushing tokens into the parser.
+	 */
+	public enum Status {
+		/**
+		 * The tokens are consumed and the parser waits for the next token.
+		 */
+		NEED_MORE,
+		/**
+		 * The input is accepted; its tree is available through {@link #getResult()}.
+		 */
+		ACCEPTED,
+		/**
+		 * The input contains a syntax error.
+		 */
+		ERROR
+	}
+
+	private Lexer lexer;
+
+	/**
+	 * The state stack and the parallel value stack (the token or node of the symbol by which the state was entered) and
+	 * position stack (the index of the first token of that symbol). They are allocated once per parser, grow when
+	 * needed and are reused by every parse, so a parser must not be used by multiple threads at the same time.
+	 */
+	private int[] stateStack = new int[INITIAL_STACK_SIZE];
+	private Object[] valueStack = new Object[INITIAL_STACK_SIZE];
+	private int[] positionStack = new int[INITIAL_STACK_SIZE];
+
+	/**
+	 * The top of the stacks between two pushes; all state of a parse is kept in the parser, so a parse can be continued
+	 * whenever the next tokens arrive.
+	 */
+	private int top;
+
+	/**
+	 * The number of tokens that are shifted in this parse.
+	 */
+	private int tokenIndex;
+
+	private Node result;
+
+	/**
+	 * Creates a parser that pulls its tokens from the lexer in {@link #parse()}.
+	 */
 	public Parser(Lexer lexer) {
 		this.lexer = lexer;
 	}
 
+	/**
+	 * Creates a parser without a lexer, of which the tokens are {@link #push(Token) pushed} by the caller as they
+	 * arrive.
+	 */
+	public Parser() {
+		this(null);
+	}
+
+	/**
+	 * Prepares the parser to parse the tokens of another lexer, keeping its stacks. A parse that was pushed into this
+	 * parser is abandoned.
+	 */
+	public void reset(Lexer lexer) {
+		this.lexer = lexer;
+		clear();
+		result = null;
+	}
+
+	/**
+	 * Parses the inputs on the threads of the executor and returns their trees in the order of the inputs.
+	 *
+	 * @throws ParserException if one of the inputs can not be parsed
+	 */
+	public static List<Node> parseAll(Collection<? extends Lexer> lexers, ExecutorService executor)
+			throws ParserException, InterruptedException {
+		List<Node> trees = new ArrayList<>(lexers.size());
+		parseAll(lexers.iterator(), executor, Math.max(1, lexers.size()), trees::add);
+		return trees;
+	}
+
+	/**
+	 * Parses the inputs on the threads of the executor and passes their trees to the consumer, on the calling thread
+	 * and in the order of the inputs. At most window inputs are parsed or wait to be consumed at the same time, so the
+	 * inputs can be an unbounded stream. Every thread of the executor reuses its own parser.
+	 *
+	 * @throws ParserException if one of the inputs can not be parsed; the inputs after it are not parsed or consumed
+	 */
+	public static void parseAll(Iterator<? extends Lexer> lexers, ExecutorService executor, int window,
+			Consumer<? super Node> consumer) throws ParserException, InterruptedException {
+		Deque<Future<Node>> pending = new ArrayDeque<>();
+		int index = 0;
+		try {
+			while (lexers.hasNext() || !pending.isEmpty()) {
+				while (lexers.hasNext() && pending.size() < window) {
+					Lexer lexer = lexers.next();
+					pending.add(executor.submit(() -> parseInBatch(lexer)));
+				}
+				try {
+					consumer.accept(pending.remove().get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof ParserException) {
+						throw new ParserException("Error in input " + index + ": " + e.getCause().getMessage(),
+								e.getCause());
+					}
+					throw new IllegalStateException("Parser failed on input " + index, e.getCause());
+				}
+				index++;
+			}
+		} finally {
+			for (Future<Node> future : pending) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static Node parseInBatch(Lexer lexer) throws ParserException {
+		Parser parser = BATCH_PARSERS.get();
+		parser.reset(lexer);
+		try {
+			return parser.parse();
+		} finally {
+			// Do not keep the input alive until the next input of this thread.
+			parser.reset(null);
+		}
+	}
+
 	public Node parse() throws ParserException {
-		Deque<Integer> stateStack = new ArrayDeque<>();
-		Deque<Object> nodeStack = new ArrayDeque<>();
+		// Abandon a parse that was pushed into this parser.
+		clear();
+		try {
+			Status status;
+			do {
+				status = push(nextToken());
+			} while (status == Status.NEED_MORE);
+
+			return takeResult(status);
+		} finally {
+			clear();
+		}
+	}
+
+	/**
+	 * Parses the tokens of the lexer without building a tree, and calls the listener for every token that is shifted
+	 * and every production that is reduced. Only the states are kept, so the memory that a parse uses is in proportion
+	 * to the depth of the stack instead of to the size of the input, and the input can be an unbounded stream.
+	 */
+	public void parse(ParseListener listener) throws ParserException {
+		// Abandon a parse that was pushed into this parser.
+		clear();
+		int top = 0;
+		Token token = null;
+
+		while (true) {
+			int state = stateStack[top];
+			int action;
+			if (ACTION_BASE[state] < 0) {
+				action = ACTION_DEFAULT[state];
+			} else {
+				if (token == null) {
+					token = nextToken();
+				}
+				action = action(state, token.getTokenType().ordinal());
+			}
+
+			switch (action & ACTION_KIND_MASK) {
+				case SHIFT:
+					if (++top == stateStack.length) {
+						growStacks();
+					}
+					stateStack[top] = action >> ACTION_KIND_BITS;
+					listener.shift(token);
+					token = null;
+					break;
+				case REDUCE:
+					int production = action >> ACTION_KIND_BITS;
+					top -= RHS_SIZES[production];
+					notifyReduce(listener, production);
+					if (++top == stateStack.length) {
+						growStacks();
+					}
+					stateStack[top] = gotoState(stateStack[top - 1], LHS_COLUMNS[production]);
+					break;
+				case ACCEPT:
+					return;
+				default:
+					throw new ParserException("");
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the tokens of the lexer form a valid input, without creating any nodes.
+	 *
+	 * @throws ParserException if the input is not valid
+	 */
+	public void recognize() throws ParserException {
+		parse(NO_LISTENER);
+	}
 
-		Token token = nextToken();
+<#if flatTree>
+	/**
+	 * Parses the tokens of the lexer into a {@link FlatTree} instead of into node objects. The tree does not keep the
+	 * tokens, only their types and their indices in the input.
+	 *
+	 * @param offHeap Whether the tree is stored in direct (off-heap) memory instead of in arrays on the heap
+	 */
+	public FlatTree parseFlat(boolean offHeap) throws ParserException {
+		// Abandon a parse that was pushed into this parser.
+		clear();
+		FlatTree tree = new FlatTree(offHeap);
+		int top = 0;
+		int tokenIndex = 0;
+		Token token = null;
 
+		// The position stack holds the indices in the tree of the nodes and tokens, instead of values.
 		while (true) {
-			int state = stateStack.peek();
-			Action action = ACTION_TABLE[state][token.getTokenType().ordinal()];
-			if (action == null) {
-				throw new ParserException("");
+			int state = stateStack[top];
+			int action;
+			if (ACTION_BASE[state] < 0) {
+				action = ACTION_DEFAULT[state];
+			} else {
+				if (token == null) {
+					token = nextToken();
+				}
+				action = action(state, token.getTokenType().ordinal());
 			}
 
-			if (action instanceof Shift) {
-				nodeStack.push(token);
-				stateStack.push(((Shift)action).state);
-				token = nextToken();
-			} else if (action instanceof Reduce) {
-				Reduce reduce = (Reduce)action;
-				Object[] nodes = popNodes(nodeStack, reduce.size);
-				nodeStack.push(reduce.reduction.reduce(nodes));
-				state = popStates(stateStack, reduce.size);
-				stateStack.push(GOTO_TABLE[state][reduce.id]);
-			} else if (action instanceof Accept) {
-				return (Node)nodeStack.pop();
+			switch (action & ACTION_KIND_MASK) {
+				case SHIFT:
+					if (++top == stateStack.length) {
+						growStacks();
+					}
+					stateStack[top] = action >> ACTION_KIND_BITS;
+					positionStack[top] = tree.addToken(token.getTokenType().ordinal(), tokenIndex++);
+					token = null;
+					break;
+				case REDUCE:
+					int production = action >> ACTION_KIND_BITS;
+					int size = RHS_SIZES[production];
+					top -= size;
+					int node = reduceFlat(tree, production, top + 1, size, tokenIndex);
+					if (++top == stateStack.length) {
+						growStacks();
+					}
+					stateStack[top] = gotoState(stateStack[top - 1], LHS_COLUMNS[production]);
+					positionStack[top] = node;
+					break;
+				case ACCEPT:
+					return tree;
+				default:
+					throw new ParserException("");
 			}
 		}
 	}
 
+</#if>
+	/**
+	 * Reparses the input after an edit, reusing the subtrees of the previous tree that the edit did not affect. The
+	 * tokens from editStart up to oldEditEnd of the previous input are replaced by the tokens from editStart up to
+	 * newEditEnd of the new input; all other tokens are unchanged.
+	 *
+	 * A subtree is shifted as a whole, as in the incremental parsers of Wagner and Graham and of tree-sitter, when the
+	 * parser is in the state in which the subtree started, the subtree does not contain an edited token and the token
+	 * after it (its lookahead) is not edited either. The parser is deterministic, so it would have built the same
+	 * subtree from its tokens. The time of a reparse therefore depends on the size of the edit and the depth of the
+	 * tree instead of on the size of the input.
+	 *
+	 * @param tree The tree of the previous input, as returned by this parser
+	 * @param tokens The tokens of the new input, which end with the EOF token
+	 */
+	public Node reparse(Node tree, List<? extends Token> tokens, int editStart, int oldEditEnd, int newEditEnd)
+			throws ParserException {
+		clear();
+		try {
+			ReuseCursor cursor = new ReuseCursor((BaseNode)tree, editStart, oldEditEnd);
+			int delta = newEditEnd - oldEditEnd;
+			int index = 0;
+			Status status = advance(null);
+			while (status == Status.NEED_MORE) {
+				BaseNode node = null;
+				if (index < editStart) {
+					node = cursor.find(index, stateStack[top]);
+				} else if (index >= newEditEnd) {
+					node = cursor.find(index - delta, stateStack[top]);
+				}
+
+				if (node != null) {
+					shift(node);
+					index += node.getTokenCount();
+					// Reduce the consistent states that follow the subtree, as if its last token was shifted.
+					status = advance(null);
+				} else {
+					status = advance(tokens.get(index++));
+				}
+			}
+			return takeResult(status);
+		} finally {
+			clear();
+		}
+	}
+
+	private Node takeResult(Status status) throws ParserException {
+		if (status == Status.ERROR) {
+			throw new ParserException("");
+		}
+		Node node = result;
+		result = null;
+		return node;
+	}
+
+	/**
+	 * Pushes the next token of the input, which ends with the EOF token. When the input is accepted or contains an
+	 * error, the parse is done and the next push starts a new parse.
+	 */
+	public Status push(Token token) {
+		return advance(token);
+	}
+
+	/**
+	 * Parses until the token is shifted and the next token is needed, or until the parse is done. Without a token it
+	 * only reduces the consistent states on top of the stack.
+	 */
+	private Status advance(Token token) {
+		int top = this.top;
+
+		while (true) {
+			int state = stateStack[top];
+			int action;
+			if (ACTION_BASE[state] < 0) {
+				// A consistent state does not need the next token, so it is reduced before waiting for that token.
+				action = ACTION_DEFAULT[state];
+			} else if (token == null) {
+				this.top = top;
+				return Status.NEED_MORE;
+			} else {
+				action = action(state, token.getTokenType().ordinal());
+			}
+
+			switch (action & ACTION_KIND_MASK) {
+				case SHIFT:
+					if (++top == stateStack.length) {
+						growStacks();
+					}
+					stateStack[top] = action >> ACTION_KIND_BITS;
+					valueStack[top] = token;
+					positionStack[top] = tokenIndex++;
+					token = null;
+					break;
+				case REDUCE:
+					int production = action >> ACTION_KIND_BITS;
+					// The values of the rhs are on top of the stack, in the order of the rhs, and are replaced by the
+					// value of the lhs. An empty production has no values, so its value is pushed.
+					int size = RHS_SIZES[production];
+					top -= size;
+					Object node = reduce(production, top + 1);
+					if (++top == stateStack.length) {
+						growStacks();
+					}
+					stateStack[top] = gotoState(stateStack[top - 1], LHS_COLUMNS[production]);
+					valueStack[top] = node;
+					if (size == 0) {
+						positionStack[top] = tokenIndex;
+					}
+					break;
+				case ACCEPT:
+					result = (Node)valueStack[top];
+					this.top = top;
+					clear();
+					return Status.ACCEPTED;
+				default:
+					this.top = top;
+					clear();
+					return Status.ERROR;
+			}
+		}
+	}
+
+	/**
+	 * Pushes a batch of tokens. The tokens after the one that completes the parse (by its acceptance or an error) are
+	 * ignored.
+	 */
+	public Status push(Iterable<? extends Token> tokens) {
+		for (Token token : tokens) {
+			Status status = push(token);
+			if (status != Status.NEED_MORE) {
+				return status;
+			}
+		}
+		return Status.NEED_MORE;
+	}
+
+	/**
+	 * Returns the tree of the input that was last accepted by a push, or null if no input was accepted yet.
+	 */
+	public Node getResult() {
+		return result;
+	}
+
+	/**
+	 * Prepares the stacks for the next parse. The tokens and nodes of the previous parse are not kept alive until then.
+	 */
+	private void clear() {
+		Arrays.fill(valueStack, 0, top + 1, null);
+		top = 0;
+		stateStack[0] = 0;
+		tokenIndex = 0;
+	}
+
+	/**
+	 * Shifts a reused subtree, like the goto after the reduction that created it.
+	 */
+	private void shift(BaseNode node) {
+		if (++top == stateStack.length) {
+			growStacks();
+		}
+		stateStack[top] = gotoState(stateStack[top - 1], LHS_COLUMNS[node.getProduction()]);
+		valueStack[top] = node;
+		positionStack[top] = tokenIndex;
+		tokenIndex += node.getTokenCount();
+	}
+
+	private void growStacks() {
+		stateStack = Arrays.copyOf(stateStack, stateStack.length * 2);
+		valueStack = Arrays.copyOf(valueStack, valueStack.length * 2);
+		positionStack = Arrays.copyOf(positionStack, positionStack.length * 2);
+	}
+
+	private static int action(int state, int terminal) {
+		int index = ACTION_BASE[state] + terminal;
+		return ACTION_CHECK[index] == terminal ? ACTION_TABLE[index] : ACTION_DEFAULT[state];
+	}
+
+	private static int gotoState(int state, int nonTerminal) {
+		int index = GOTO_BASE[state] + nonTerminal;
+		return GOTO_CHECK[index] == nonTerminal ? GOTO_TABLE[index] : GOTO_DEFAULT[state];
+	}
+
 	private Token nextToken() throws ParserException {
 		try {
 			return lexer.nextToken();
@@ -59,18 +506,143 @@ public class Parser {
 		}
 	}
 
-	private static Object[] popNodes(Deque<Object> stack, int size) {
-		Object[] nodes = new Object[size];
-		for (int i = 0; i < size; i++) {
-			nodes[i] = stack.pop();
+	/**
+	 * Creates the value of the lhs of the production from the values of its rhs, which are on the value stack from index
+	 * first.
+	 */
+	private Object reduce(int production, int first) {
+		switch (production) {
+${reductionCasesJava}			default:
+				throw new IllegalStateException("Unknown production " + production);
 		}
-		return nodes;
 	}
 
-	private static int popStates(Deque<Integer> stack, int size) {
-		for (int i = 0; i < size; i++) {
-			stack.pop();
+	private static void notifyReduce(ParseListener listener, int production) {
+		switch (production) {
+<#list nodeProductions as nodeProduction>
+			case ${nodeProduction.production}:
+				listener.reduce${nodeProduction.className}();
+				break;
+</#list>
+		}
+	}
+
+<#if flatTree>
+	/**
+	 * Adds the node of the production to the flat tree and returns its index. A unit production does not add a node;
+	 * the node of its rhs stands for it.
+	 */
+	private int reduceFlat(FlatTree tree, int production, int first, int size, int tokenEnd) {
+		switch (production) {
+<#if unitProductionCasesJava?has_content>
+${unitProductionCasesJava}				return positionStack[first];
+</#if>
+			default:
+				return tree.addNode(production, positionStack, first, size, tokenEnd);
+		}
+	}
+
+</#if>
+	/**
+	 * Records in the node that the production created it, the state in which it started and the number of its tokens.
+	 */
+	private BaseNode track(BaseNode node, int production, int first) {
+		int firstTokenIndex = RHS_SIZES[production] == 0 ? tokenIndex : positionStack[first];
+		node.setParseInfo(production, stateStack[first - 1], tokenIndex - firstTokenIndex);
+		return node;
+	}
+
+	/**
+	 * Walks the previous tree in the order of the tokens to find the subtrees that can be reused. It keeps the path
+	 * from the root to the last subtree it visited, so the whole walk of a reparse visits every node at most once.
+	 */
+	private static final class ReuseCursor {
+
+		private final Deque<BaseNode> path = new ArrayDeque<>();
+
+		/**
+		 * The index of the first token of each node on the path; the nodes only know their number of tokens, so a
+		 * reused subtree does not have to be updated when the tokens before it change.
+		 */
+		private final Deque<Integer> starts = new ArrayDeque<>();
+
+		private final int editStart;
+
+		private final int oldEditEnd;
+
+		ReuseCursor(BaseNode root, int editStart, int oldEditEnd) {
+			this.editStart = editStart;
+			this.oldEditEnd = oldEditEnd;
+			path.push(root);
+			starts.push(0);
+		}
+
+		/**
+		 * Returns the largest subtree that starts at the token index (of the previous input) in the state and that is
+		 * not affected by the edit, or null if there is none. The index must not decrease between calls.
+		 */
+		BaseNode find(int index, int state) {
+			// Leave the subtrees that end before the index.
+			while (!path.isEmpty() && starts.peek() + path.peek().getTokenCount() <= index) {
+				path.pop();
+				starts.pop();
+			}
+			if (path.isEmpty()) {
+				return null;
+			}
+
+			BaseNode node = path.peek();
+			int start = starts.peek();
+			while (true) {
+				if (start == index && isReusable(node, start, state)) {
+					return node;
+				}
+
+				// Descend into the child that contains the index.
+				BaseNode child = null;
+				for (int i = 0; i < node.getChildCount(); i++) {
+					Object value = node.getChild(i);
+					int tokenCount = value instanceof BaseNode ? ((BaseNode)value).getTokenCount() : 1;
+					if (index < start + tokenCount) {
+						child = value instanceof BaseNode ? (BaseNode)value : null;
+						break;
+					}
+					start += tokenCount;
+				}
+				if (child == null) {
+					// The index is at a token, which is parsed again.
+					return null;
+				}
+				path.push(child);
+				starts.push(start);
+				node = child;
+			}
+		}
+
+		private boolean isReusable(BaseNode node, int start, int state) {
+			int end = start + node.getTokenCount();
+			return node.getStartState() == state
+					&& node.getTokenCount() > 0
+					&& (end < editStart || start >= oldEditEnd);
+		}
+	}
+
+	/**
+	 * Unpacks an int array from the string constants in which the generator packed it. Every value v is stored as v + 1,
+	 * in one char if it is smaller than 0x8000 and otherwise in two chars, of which the first has its high bit set.
+	 */
+	private static final int[] unpack(int length, String... chunks) {
+		int[] result = new int[length];
+		int index = 0;
+		for (String chunk : chunks) {
+			for (int i = 0; i < chunk.length(); i++) {
+				int value = chunk.charAt(i);
+				if (value >= 0x8000) {
+					value = (value & 0x7FFF) << 16 | chunk.charAt(++i);
+				}
+				result[index++] = value - 1;
+			}
 		}
-		return stack.peek();
+		return result;
 	}
 }
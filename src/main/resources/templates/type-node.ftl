@@ -24,9 +24,26 @@ public class ${node.className} <#if node.baseClassName??>extends ${node.baseClas
 	@Override
 	public <R, X extends VisitingException> R accept(NodeVisitor<R, X> visitor) throws X {
 		return visitor.visit(this);
+	}
+
+	@Override
+	public int getChildCount() {
+		return ${node.parameterList?size};
+	}
+
+	@Override
+	public Object getChild(int index) {
+		switch (index) {
+<#list node.parameterList as parameter>
+			case ${parameter_index}:
+				return ${parameter.name};
+</#list>
+			default:
+				throw new IndexOutOfBoundsException("Child " + index + " of " + getChildCount());
+		}
 	}<#list node.parameterList as parameter>
 
-<#if node.isBinaryNode && parameter.name == "lhs" || parameter.name == "rhs">	@Override
+<#if node.isBinaryNode && (parameter.name == "lhs" || parameter.name == "rhs")>	@Override
 </#if>
 	public ${parameter.type} get${parameter.nameUpperCase}() {
 		return ${parameter.name};
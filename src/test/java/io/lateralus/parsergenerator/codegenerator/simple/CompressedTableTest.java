@@ -0,0 +1,102 @@
+package io.lateralus.parsergenerator.codegenerator.simple;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static io.lateralus.parsergenerator.codegenerator.simple.CompressedTable.NO_VALUE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedTableTest {
+
+	@Test
+	void returnsTheValuesOfTheUncompressedTable() {
+		int[][] rows = {
+				{ 1, NO_VALUE, 2, NO_VALUE },
+				{ NO_VALUE, 3, NO_VALUE, 4 },
+				{ 5, 5, 5, 6 },
+				{ NO_VALUE, NO_VALUE, NO_VALUE, NO_VALUE }
+		};
+
+		CompressedTable table = CompressedTable.compress(rows, 4, value -> false);
+
+		assertGets(rows, table);
+		assertArrayEquals(new int[] { NO_VALUE, NO_VALUE, NO_VALUE, NO_VALUE }, table.getDefaults());
+	}
+
+	@Test
+	void mostCommonCandidateIsTheDefaultOfARow() {
+		// Only the even values may be a default; the 3s are more common than the 2s, but stay in the vector.
+		int[][] rows = {
+				{ 3, 3, 3, 2, 2, NO_VALUE },
+				{ 4, 6, 6, 4, NO_VALUE, NO_VALUE },
+				{ 1, NO_VALUE, NO_VALUE, NO_VALUE, NO_VALUE, NO_VALUE }
+		};
+
+		CompressedTable table = CompressedTable.compress(rows, 6, value -> value % 2 == 0);
+
+		// A tie is broken by the lowest value.
+		assertArrayEquals(new int[] { 2, 4, NO_VALUE }, table.getDefaults());
+		for (int row = 0; row < rows.length; row++) {
+			for (int column = 0; column < rows[row].length; column++) {
+				int expected = rows[row][column] == NO_VALUE ? table.getDefaults()[row] : rows[row][column];
+				assertEquals(expected, table.get(row, column), "row " + row + ", column " + column);
+			}
+		}
+	}
+
+	@Test
+	void equalRowsShareTheirDisplacement() {
+		int[][] rows = {
+				{ 1, NO_VALUE, 2 },
+				{ NO_VALUE, 7, NO_VALUE },
+				{ 1, NO_VALUE, 2 }
+		};
+
+		CompressedTable table = CompressedTable.compress(rows, 3, value -> false);
+
+		assertGets(rows, table);
+		assertEquals(table.getBase()[0], table.getBase()[2]);
+	}
+
+	@Test
+	void fitsSparseRowsIntoEachOther() {
+		// Tables with a few entries per row, like the parse tables, end up much smaller than the uncompressed table.
+		Random random = new Random(42);
+		int rowCount = 200;
+		int columnCount = 60;
+		int[][] rows = new int[rowCount][columnCount];
+		for (int[] row : rows) {
+			for (int column = 0; column < columnCount; column++) {
+				row[column] = random.nextInt(10) == 0 ? random.nextInt(50) : NO_VALUE;
+			}
+		}
+
+		CompressedTable table = CompressedTable.compress(rows, columnCount, value -> value < 25);
+
+		for (int row = 0; row < rowCount; row++) {
+			for (int column = 0; column < columnCount; column++) {
+				int value = table.get(row, column);
+				if (rows[row][column] != NO_VALUE) {
+					assertEquals(rows[row][column], value, "row " + row + ", column " + column);
+				} else {
+					assertEquals(table.getDefaults()[row], value, "row " + row + ", column " + column);
+				}
+			}
+			// Every lookup stays within the vectors.
+			assertTrue(table.getBase()[row] + columnCount <= table.getCheck().length);
+		}
+		assertEquals(table.getCheck().length, table.getTable().length);
+		assertTrue(table.size() < rowCount * columnCount / 4, () -> "The compressed table has " + table.size() + " ints");
+	}
+
+	private static void assertGets(int[][] rows, CompressedTable table) {
+		for (int row = 0; row < rows.length; row++) {
+			for (int column = 0; column < rows[row].length; column++) {
+				assertEquals(rows[row][column], table.get(row, column), "row " + row + ", column " + column);
+			}
+		}
+	}
+}
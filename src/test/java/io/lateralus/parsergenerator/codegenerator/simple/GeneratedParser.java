@@ -0,0 +1,411 @@
+package io.lateralus.parsergenerator.codegenerator.simple;
+
+import io.lateralus.parsergenerator.codegenerator.SourceFile;
+import io.lateralus.parsergenerator.core.Terminal;
+import io.lateralus.parsergenerator.core.definition.ParserDefinition;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A parser that is generated from a parser definition, compiled in memory and loaded, together with a minimal lexer
+ * package (gen.lexer) of which the token types are the terminals of the grammar. The generated classes are used
+ * through reflection; a syntax error is reported as a null result.
+ */
+final class GeneratedParser {
+
+	private static final String PARSER_PACKAGE = "gen.parser";
+	private static final String LEXER_PACKAGE = "gen.lexer";
+
+	private final ClassLoader classLoader;
+	private final Class<?> parserClass;
+	private final Class<?> tokenClass;
+	private final Class<?> tokenTypeClass;
+	private final Class<?> lexerClass;
+	private final Class<?> baseNodeClass;
+	private int tokenCount;
+
+	private GeneratedParser(ClassLoader classLoader) throws ClassNotFoundException {
+		this.classLoader = classLoader;
+		this.parserClass = load(PARSER_PACKAGE + ".Parser");
+		this.tokenClass = load(LEXER_PACKAGE + ".Token");
+		this.tokenTypeClass = load(LEXER_PACKAGE + ".TokenType");
+		this.lexerClass = load(LEXER_PACKAGE + ".Lexer");
+		this.baseNodeClass = load(PARSER_PACKAGE + ".nodes.BaseNode");
+	}
+
+	/**
+	 * Generates, compiles and loads the parser of the definition.
+	 *
+	 * @param flatTree Whether the parser can build a flat tree as well
+	 */
+	static GeneratedParser generate(ParserDefinition parserDefinition, boolean flatTree) throws Exception {
+		BasicParserCodeGenerator codeGenerator = new BasicParserCodeGenerator();
+		codeGenerator.setProperties(new BasicParserCodeGenerator.Properties("Test", PARSER_PACKAGE, LEXER_PACKAGE,
+				flatTree));
+
+		Map<String, String> sources = new HashMap<>();
+		for (SourceFile<String> sourceFile : codeGenerator.generate(parserDefinition)) {
+			sources.put(sourceFile.getName(), sourceFile.getContents());
+		}
+		sources.putAll(createLexerSources(parserDefinition.getOrderedTerminalList()));
+		return new GeneratedParser(compile(sources));
+	}
+
+	private static Map<String, String> createLexerSources(List<Terminal> orderedTerminals) {
+		String directory = LEXER_PACKAGE.replace('.', '/') + "/";
+		String header = "package " + LEXER_PACKAGE + ";\n\n";
+		return Map.of(
+				directory + "TokenType.java", header + "public enum TokenType {\n\t"
+						+ orderedTerminals.stream().map(Terminal::getName).collect(Collectors.joining(", ")) + "\n}\n",
+				directory + "Token.java", header + "public class Token {\n"
+						+ "\tprivate final TokenType tokenType;\n"
+						+ "\tprivate final String text;\n"
+						+ "\tpublic Token(TokenType tokenType, String text) { this.tokenType = tokenType; this.text = text; }\n"
+						+ "\tpublic TokenType getTokenType() { return tokenType; }\n"
+						+ "\tpublic String getText() { return text; }\n"
+						+ "}\n",
+				directory + "Lexer.java", header + "public interface Lexer {\n"
+						+ "\tToken nextToken() throws LexerException;\n"
+						+ "}\n",
+				directory + "LexerException.java", header + "public class LexerException extends Exception {\n"
+						+ "\tpublic LexerException(String message) { super(message); }\n"
+						+ "}\n");
+	}
+
+	private static ClassLoader compile(Map<String, String> sources) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+
+		List<JavaFileObject> compilationUnits = new ArrayList<>();
+		sources.forEach((name, contents) -> compilationUnits.add(
+				new SimpleJavaFileObject(URI.create("string:///" + name), JavaFileObject.Kind.SOURCE) {
+					@Override
+					public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+						return contents;
+					}
+				}));
+
+		StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+		ForwardingJavaFileManager<StandardJavaFileManager> fileManager = new ForwardingJavaFileManager<>(standardFileManager) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+					FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						return classes.computeIfAbsent(className, name -> new ByteArrayOutputStream());
+					}
+				};
+			}
+		};
+
+		boolean success = compiler.getTask(null, fileManager, diagnostics, List.of("-proc:none"), null,
+				compilationUnits).call();
+		if (!success) {
+			throw new IllegalStateException("The generated parser does not compile:\n" + diagnostics.getDiagnostics().stream()
+					.filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+					.map(Object::toString)
+					.collect(Collectors.joining("\n")));
+		}
+
+		return new ClassLoader(GeneratedParser.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+				ByteArrayOutputStream bytes = classes.get(name);
+				if (bytes == null) {
+					throw new ClassNotFoundException(name);
+				}
+				return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+			}
+		};
+	}
+
+	Class<?> load(String className) throws ClassNotFoundException {
+		return Class.forName(className, true, classLoader);
+	}
+
+	/**
+	 * Creates a token of the given type. The text of a token is its type and a sequence number, which makes every token
+	 * of a test distinguishable.
+	 */
+	Object token(String tokenType) throws ReflectiveOperationException {
+		return token(tokenType, tokenType + "#" + tokenCount++);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	Object token(String tokenType, String text) throws ReflectiveOperationException {
+		Object type = Enum.valueOf((Class<Enum>)tokenTypeClass, tokenType);
+		return tokenClass.getConstructor(tokenTypeClass, String.class).newInstance(type, text);
+	}
+
+	/**
+	 * Creates the tokens of a sentence, followed by EOF.
+	 */
+	List<Object> tokens(List<Terminal> sentence) throws ReflectiveOperationException {
+		List<Object> tokens = new ArrayList<>();
+		for (Terminal terminal : sentence) {
+			tokens.add(token(terminal.getName()));
+		}
+		tokens.add(token(Terminal.EOF.getName(), ""));
+		return tokens;
+	}
+
+	/**
+	 * Creates a lexer that returns the tokens.
+	 */
+	Object lexer(List<Object> tokens) {
+		Iterator<Object> iterator = tokens.iterator();
+		return Proxy.newProxyInstance(classLoader, new Class<?>[] { lexerClass }, (proxy, method, args) -> {
+			if (method.getName().equals("nextToken")) {
+				return iterator.next();
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	/**
+	 * Creates a parse listener that adds its events to the list; "shift" and the text of a shifted token, or the name
+	 * of the reduce method of a node.
+	 */
+	Object listener(List<String> events) throws ClassNotFoundException {
+		return Proxy.newProxyInstance(classLoader, new Class<?>[] { load(PARSER_PACKAGE + ".ParseListener") },
+				(proxy, method, args) -> {
+					if (method.getName().equals("shift")) {
+						events.add("shift " + invoke(args[0], "getText"));
+					} else if (method.getName().startsWith("reduce")) {
+						events.add(method.getName());
+					} else {
+						throw new UnsupportedOperationException(method.getName());
+					}
+					return null;
+				});
+	}
+
+	Object newParser() throws ReflectiveOperationException {
+		return parserClass.getConstructor().newInstance();
+	}
+
+	Object newParser(List<Object> tokens) throws ReflectiveOperationException {
+		return parserClass.getConstructor(lexerClass).newInstance(lexer(tokens));
+	}
+
+	/**
+	 * Parses the tokens with a new parser.
+	 *
+	 * @return The tree, or null on a syntax error
+	 */
+	Object parse(List<Object> tokens) throws Throwable {
+		return invoke(newParser(tokens), "parse");
+	}
+
+	/**
+	 * Invokes the public method of a generated object with the given name of which the parameters accept the
+	 * arguments.
+	 *
+	 * @return The result, or null if the method throws a ParserException
+	 */
+	Object invoke(Object target, String methodName, Object... args) throws Throwable {
+		Method method = findMethod(target.getClass(), methodName, args);
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause().getClass().getSimpleName().equals("ParserException")) {
+				return null;
+			}
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Invokes the method like {@link #invoke}, for a method that returns nothing.
+	 *
+	 * @return Whether the method did not throw a ParserException
+	 */
+	boolean succeeds(Object target, String methodName, Object... args) throws Throwable {
+		Method method = findMethod(target.getClass(), methodName, args);
+		try {
+			method.invoke(target, args);
+			return true;
+		} catch (InvocationTargetException e) {
+			if (e.getCause().getClass().getSimpleName().equals("ParserException")) {
+				return false;
+			}
+			throw e.getCause();
+		}
+	}
+
+	private static Method findMethod(Class<?> type, String methodName, Object[] args) {
+		for (Method method : type.getMethods()) {
+			if (method.getName().equals(methodName) && accepts(method.getParameterTypes(), args)) {
+				return method;
+			}
+		}
+		throw new IllegalArgumentException("No method " + methodName + " for " + args.length + " arguments in " + type);
+	}
+
+	private static boolean accepts(Class<?>[] parameterTypes, Object[] args) {
+		if (parameterTypes.length != args.length) {
+			return false;
+		}
+		for (int i = 0; i < args.length; i++) {
+			// Primitive parameters are only passed boxed numbers and booleans in the tests.
+			if (args[i] != null && !parameterTypes[i].isPrimitive() && !parameterTypes[i].isInstance(args[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the nodes of a tree, by identity.
+	 */
+	Set<Object> nodes(Object tree) throws Throwable {
+		Set<Object> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Object> workList = new ArrayDeque<>();
+		workList.push(tree);
+		while (!workList.isEmpty()) {
+			Object node = workList.pop();
+			nodes.add(node);
+			int childCount = (int)invoke(node, "getChildCount");
+			for (int i = 0; i < childCount; i++) {
+				Object child = invoke(node, "getChild", i);
+				if (baseNodeClass.isInstance(child)) {
+					workList.push(child);
+				}
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the events that a parse listener receives for the tree (see {@link #listener(List)}); the tree in post
+	 * order.
+	 */
+	List<String> events(Object tree) throws Throwable {
+		List<String> events = new ArrayList<>();
+		Deque<Object> workList = new ArrayDeque<>();
+		workList.push(tree);
+		while (!workList.isEmpty()) {
+			Object value = workList.pop();
+			if (value instanceof String) {
+				events.add((String)value);
+			} else if (baseNodeClass.isInstance(value)) {
+				workList.push("reduce" + value.getClass().getSimpleName());
+				int childCount = (int)invoke(value, "getChildCount");
+				for (int i = childCount - 1; i >= 0; i--) {
+					workList.push(invoke(value, "getChild", i));
+				}
+			} else {
+				events.add("shift " + invoke(value, "getText"));
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Describes a tree as the class names of its nodes with their children in parentheses and the texts of its tokens.
+	 * The tree is walked iteratively, since the trees of long lists are deep.
+	 */
+	String describe(Object tree) throws Throwable {
+		return describe(tree, false);
+	}
+
+	/**
+	 * Describes a tree like {@link #describe(Object)}, but with the ids of the productions that created the nodes
+	 * instead of their class names, like {@link #describeFlat(Object, List)}.
+	 */
+	String describeProductions(Object tree) throws Throwable {
+		return describe(tree, true);
+	}
+
+	private String describe(Object tree, boolean byProduction) throws Throwable {
+		if (tree == null) {
+			return "null";
+		}
+		StringBuilder builder = new StringBuilder();
+		Deque<Object> workList = new ArrayDeque<>();
+		workList.push(tree);
+		while (!workList.isEmpty()) {
+			Object value = workList.pop();
+			if (value instanceof String) {
+				builder.append(value);
+			} else if (baseNodeClass.isInstance(value)) {
+				builder.append(byProduction ? "#" + invoke(value, "getProduction") : value.getClass().getSimpleName())
+						.append('(');
+				workList.push(")");
+				int childCount = (int)invoke(value, "getChildCount");
+				for (int i = childCount - 1; i >= 0; i--) {
+					workList.push(invoke(value, "getChild", i));
+					if (i > 0) {
+						workList.push(" ");
+					}
+				}
+			} else {
+				builder.append(invoke(value, "getText"));
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Describes a flat tree as the ids of the productions of its nodes with their children in parentheses and the texts
+	 * of its tokens, which are looked up in the tokens of the input.
+	 */
+	String describeFlat(Object flatTree, List<Object> tokens) throws Throwable {
+		if (flatTree == null) {
+			return "null";
+		}
+		StringBuilder builder = new StringBuilder();
+		Deque<Object> workList = new ArrayDeque<>();
+		workList.push(invoke(flatTree, "getRoot"));
+		while (!workList.isEmpty()) {
+			Object value = workList.pop();
+			if (value instanceof String) {
+				builder.append(value);
+			} else if ((boolean)invoke(flatTree, "isToken", value)) {
+				builder.append(invoke(tokens.get((int)invoke(flatTree, "getTokenStart", value)), "getText"));
+			} else {
+				builder.append("#").append(invoke(flatTree, "getKind", value)).append('(');
+				List<Object> children = new ArrayList<>();
+				for (Object child = invoke(flatTree, "getFirstChild", value); (int)child != -1;
+						child = invoke(flatTree, "getNextSibling", child)) {
+					children.add(child);
+				}
+				workList.push(")");
+				for (int i = children.size() - 1; i >= 0; i--) {
+					workList.push(children.get(i));
+					if (i > 0) {
+						workList.push(" ");
+					}
+				}
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,422 @@
+package io.lateralus.parsergenerator.codegenerator.simple;
+
+import io.lateralus.parsergenerator.core.Action;
+import io.lateralus.parsergenerator.core.CorpusGrammars;
+import io.lateralus.parsergenerator.core.Grammar;
+import io.lateralus.parsergenerator.core.State;
+import io.lateralus.parsergenerator.core.Terminal;
+import io.lateralus.parsergenerator.core.definition.ParserDefinition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Generates, compiles and runs the parsers of the corpus grammars.
+ */
+class GeneratedParserTest {
+
+	private static final int SENTENCE_COUNT = 50;
+	private static final int SENTENCE_SIZE = 40;
+
+	/**
+	 * The definitions are built, and the parsers generated and compiled, once per grammar.
+	 */
+	private static final Map<String, ParserDefinition> DEFINITIONS = new HashMap<>();
+	private static final Map<String, GeneratedParser> PARSERS = new HashMap<>();
+
+	static List<String> grammarNames() {
+		return CorpusGrammars.NAMES;
+	}
+
+	private static synchronized ParserDefinition definitionOf(String grammarName) throws Exception {
+		ParserDefinition definition = DEFINITIONS.get(grammarName);
+		if (definition == null) {
+			definition = CorpusGrammars.createDefinition(CorpusGrammars.build(grammarName));
+			DEFINITIONS.put(grammarName, definition);
+		}
+		return definition;
+	}
+
+	private static synchronized GeneratedParser parserOf(String grammarName) throws Exception {
+		GeneratedParser parser = PARSERS.get(grammarName);
+		if (parser == null) {
+			parser = GeneratedParser.generate(definitionOf(grammarName), true);
+			PARSERS.put(grammarName, parser);
+		}
+		return parser;
+	}
+
+	@Test
+	void parsesJsonArrayOfValuesThatAreUnitsOfDifferentNonTerminals() throws Throwable {
+		// Root -> Value and Elements -> Value are both unit productions, so a value is passed on as a Root as well as
+		// an Elements.
+		GeneratedParser parser = parserOf("json");
+		List<Object> tokens = List.of(
+				parser.token("LEFT_BRACKET", "["),
+				parser.token("NUMBER", "1"),
+				parser.token("COMMA", ","),
+				parser.token("NUMBER", "2"),
+				parser.token("RIGHT_BRACKET", "]"),
+				parser.token("EOF", ""));
+
+		assertEquals("ArrayNode([ ElementListNode(NumberValueNode(1) , NumberValueNode(2)) ])",
+				parser.describe(parser.parse(tokens)));
+		assertEquals("NumberValueNode(1)", parser.describe(parser.parse(List.of(tokens.get(1), tokens.get(5)))));
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void parsesRandomSentences(String grammarName) throws Throwable {
+		GeneratedParser parser = parserOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			List<Terminal> sentence = sentenceGenerator.generate(SENTENCE_SIZE);
+			Object tree = parser.parse(parser.tokens(sentence));
+			assertNotNull(tree, () -> "Could not parse " + sentence);
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void detectsTheSyntaxErrorsOfTheActionTable(String grammarName) throws Throwable {
+		// The generated parser reduces in consistent states without looking at the next token, and looks up its
+		// actions in compressed tables with defaults. It must still accept exactly the sentences that the action table
+		// accepts, so random sentences are mutated and checked against a parse with the uncompressed tables.
+		GeneratedParser parser = parserOf(grammarName);
+		ParserDefinition definition = definitionOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+		Random random = new Random(grammarName.hashCode());
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		List<Terminal> terminals = orderedTerminals.subList(1, orderedTerminals.size());
+
+		int rejectedCount = 0;
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			List<Terminal> sentence = mutate(sentenceGenerator.generate(SENTENCE_SIZE), random, terminals);
+			boolean accepted = accepts(definition, sentence);
+			Object tree = parser.parse(parser.tokens(sentence));
+			assertEquals(accepted, tree != null, () -> "The parsers do not agree on " + sentence);
+			if (!accepted) {
+				rejectedCount++;
+			}
+		}
+		assertTrue(rejectedCount > 0);
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void pushedTokensAreParsedAsPulledTokens(String grammarName) throws Throwable {
+		GeneratedParser parser = parserOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+		// One parser for all pushes, since a parse that is done (accepted or not) starts a new parse.
+		Object pushParser = parser.newParser();
+
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			List<Object> tokens = parser.tokens(sentenceGenerator.generate(SENTENCE_SIZE));
+			String expected = parser.describe(parser.parse(tokens));
+
+			for (int j = 0; j < tokens.size() - 1; j++) {
+				assertEquals("NEED_MORE", parser.invoke(pushParser, "push", tokens.get(j)).toString());
+			}
+			assertEquals("ACCEPTED", parser.invoke(pushParser, "push", tokens.get(tokens.size() - 1)).toString());
+			assertEquals(expected, parser.describe(parser.invoke(pushParser, "getResult")));
+
+			// The same tokens in batches; the tokens after the accepted input are ignored.
+			int split = tokens.size() / 2;
+			assertEquals("NEED_MORE", parser.invoke(pushParser, "push", tokens.subList(0, split)).toString());
+			List<Object> rest = new ArrayList<>(tokens.subList(split, tokens.size()));
+			rest.add(parser.token(Terminal.EOF.getName(), ""));
+			assertEquals("ACCEPTED", parser.invoke(pushParser, "push", rest).toString());
+			assertEquals(expected, parser.describe(parser.invoke(pushParser, "getResult")));
+		}
+	}
+
+	@Test
+	void pushedSyntaxErrorEndsTheParse() throws Throwable {
+		GeneratedParser parser = parserOf("json");
+		Object pushParser = parser.newParser();
+
+		assertEquals("NEED_MORE", parser.invoke(pushParser, "push", parser.token("LEFT_BRACKET", "[")).toString());
+		assertEquals("ERROR", parser.invoke(pushParser, "push", parser.token("COMMA", ",")).toString());
+		// The next push starts a new parse, and the result of the previous accepted input is kept until it is replaced.
+		assertNull(parser.invoke(pushParser, "getResult"));
+		assertEquals("ACCEPTED", parser.invoke(pushParser, "push", List.of(
+				parser.token("NUMBER", "1"),
+				parser.token("EOF", ""))).toString());
+		assertEquals("NumberValueNode(1)", parser.describe(parser.invoke(pushParser, "getResult")));
+		assertEquals("ERROR", parser.invoke(pushParser, "push", parser.token("RIGHT_BRACKET", "]")).toString());
+		assertEquals("NumberValueNode(1)", parser.describe(parser.invoke(pushParser, "getResult")));
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void reparseAfterAnEditCreatesTheTreeOfAFreshParse(String grammarName) throws Throwable {
+		// A document is edited one token at a time; an edit that makes the document invalid is undone again.
+		GeneratedParser parser = parserOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+		Random random = new Random(grammarName.hashCode());
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		List<Terminal> terminals = orderedTerminals.subList(1, orderedTerminals.size());
+		Object reparser = parser.newParser();
+
+		int reusedNodeCount = 0;
+		for (int i = 0; i < SENTENCE_COUNT / 10; i++) {
+			// A document that is long enough to have subtrees that an edit does not affect.
+			List<Terminal> sentence;
+			do {
+				sentence = sentenceGenerator.generate(SENTENCE_SIZE * 4);
+			} while (sentence.size() < SENTENCE_SIZE);
+			List<Object> tokens = parser.tokens(sentence);
+			Object tree = parser.parse(tokens);
+			for (int j = 0; j < SENTENCE_COUNT; j++) {
+				// The EOF token is never edited.
+				int editStart = random.nextInt(tokens.size());
+				int oldEditEnd = editStart;
+				List<Object> editedTokens = new ArrayList<>(tokens);
+				if (editStart < tokens.size() - 1 && random.nextBoolean()) {
+					editedTokens.remove(editStart);
+					oldEditEnd++;
+				}
+				int newEditEnd = editStart;
+				if (oldEditEnd == editStart || random.nextBoolean()) {
+					editedTokens.add(editStart, parser.token(terminals.get(random.nextInt(terminals.size())).getName()));
+					newEditEnd++;
+				}
+
+				Object expected = parser.parse(editedTokens);
+				Object reparsedTree = parser.invoke(reparser, "reparse", tree, editedTokens, editStart, oldEditEnd,
+						newEditEnd);
+				assertEquals(parser.describe(expected), parser.describe(reparsedTree));
+				if (reparsedTree != null) {
+					Set<Object> reusedNodes = parser.nodes(reparsedTree);
+					reusedNodes.retainAll(parser.nodes(tree));
+					reusedNodeCount += reusedNodes.size();
+					tree = reparsedTree;
+					tokens = editedTokens;
+				}
+			}
+		}
+		assertTrue(reusedNodeCount > 0);
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void resetParserParsesLikeANewParser(String grammarName) throws Throwable {
+		GeneratedParser parser = parserOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+		Random random = new Random(grammarName.hashCode());
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		List<Terminal> terminals = orderedTerminals.subList(1, orderedTerminals.size());
+		Object reusedParser = parser.newParser();
+
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			// Every other input has a syntax error, after which the parser is reused as well.
+			List<Terminal> sentence = sentenceGenerator.generate(SENTENCE_SIZE);
+			List<Object> tokens = parser.tokens(i % 2 == 0 ? sentence : mutate(sentence, random, terminals));
+			if (i % 3 == 0) {
+				// A pushed parse that is not finished is abandoned by the reset.
+				parser.invoke(reusedParser, "push", tokens.subList(0, tokens.size() / 2));
+			}
+
+			parser.invoke(reusedParser, "reset", parser.lexer(tokens));
+			assertEquals(parser.describe(parser.parse(tokens)), parser.describe(parser.invoke(reusedParser, "parse")));
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void parseAllReturnsTheTreesInTheOrderOfTheInputs(String grammarName) throws Throwable {
+		GeneratedParser parser = parserOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+		List<List<Object>> inputs = new ArrayList<>();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			List<Object> tokens = parser.tokens(sentenceGenerator.generate(SENTENCE_SIZE));
+			inputs.add(tokens);
+			expected.add(parser.describe(parser.parse(tokens)));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Object> lexers = new ArrayList<>();
+			for (List<Object> tokens : inputs) {
+				lexers.add(parser.lexer(tokens));
+			}
+			List<String> trees = new ArrayList<>();
+			for (Object tree : (List<?>)parser.invoke(parser.newParser(), "parseAll", lexers, executor)) {
+				trees.add(parser.describe(tree));
+			}
+			assertEquals(expected, trees);
+
+			// The same inputs as a stream, of which only a few are parsed ahead of the consumer.
+			List<Object> streamedLexers = new ArrayList<>();
+			for (List<Object> tokens : inputs) {
+				streamedLexers.add(parser.lexer(tokens));
+			}
+			List<String> streamedTrees = new ArrayList<>();
+			Consumer<Object> consumer = tree -> {
+				try {
+					streamedTrees.add(parser.describe(tree));
+				} catch (Throwable e) {
+					throw new IllegalStateException(e);
+				}
+			};
+			parser.invoke(parser.newParser(), "parseAll", streamedLexers.iterator(), executor, 3, consumer);
+			assertEquals(expected, streamedTrees);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void parseAllFailsOnAnInvalidInput() throws Throwable {
+		GeneratedParser parser = parserOf("json");
+		List<Object> lexers = List.of(
+				parser.lexer(List.of(parser.token("NUMBER", "1"), parser.token("EOF", ""))),
+				parser.lexer(List.of(parser.token("COMMA", ","), parser.token("EOF", ""))));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			assertNull(parser.invoke(parser.newParser(), "parseAll", lexers, executor));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void flatTreeHasTheNodesOfTheTree(String grammarName) throws Throwable {
+		GeneratedParser parser = parserOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+		Random random = new Random(grammarName.hashCode());
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		List<Terminal> terminals = orderedTerminals.subList(1, orderedTerminals.size());
+
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			List<Terminal> sentence = sentenceGenerator.generate(SENTENCE_SIZE);
+			List<Object> tokens = parser.tokens(i % 2 == 0 ? sentence : mutate(sentence, random, terminals));
+			String expected = parser.describeProductions(parser.parse(tokens));
+
+			for (boolean offHeap : new boolean[] { false, true }) {
+				Object flatTree = parser.invoke(parser.newParser(tokens), "parseFlat", offHeap);
+				assertEquals(expected, parser.describeFlat(flatTree, tokens));
+				if (flatTree != null) {
+					// The root spans all tokens but EOF.
+					Object root = parser.invoke(flatTree, "getRoot");
+					assertEquals(0, parser.invoke(flatTree, "getTokenStart", root));
+					assertEquals(tokens.size() - 1, parser.invoke(flatTree, "getTokenEnd", root));
+				}
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void listenerReceivesTheTreeInPostOrder(String grammarName) throws Throwable {
+		GeneratedParser parser = parserOf(grammarName);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		SentenceGenerator sentenceGenerator = new SentenceGenerator(grammar, grammarName.hashCode());
+		Random random = new Random(grammarName.hashCode());
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		List<Terminal> terminals = orderedTerminals.subList(1, orderedTerminals.size());
+
+		for (int i = 0; i < SENTENCE_COUNT; i++) {
+			List<Terminal> sentence = sentenceGenerator.generate(SENTENCE_SIZE);
+			List<Object> tokens = parser.tokens(i % 2 == 0 ? sentence : mutate(sentence, random, terminals));
+			Object tree = parser.parse(tokens);
+
+			List<String> events = new ArrayList<>();
+			assertEquals(tree != null, parser.succeeds(parser.newParser(tokens), "parse", parser.listener(events)));
+			if (tree != null) {
+				assertEquals(parser.events(tree), events);
+			}
+			assertEquals(tree != null, parser.succeeds(parser.newParser(tokens), "recognize"));
+		}
+	}
+
+	/**
+	 * Parses the sentence (followed by EOF) with the action and goto tables of the definition.
+	 */
+	private static boolean accepts(ParserDefinition definition, List<Terminal> sentence) {
+		Map<String, Terminal> terminals = definition.getOrderedTerminalList().stream()
+				.collect(Collectors.toMap(Terminal::getName, Function.identity()));
+		List<Terminal> input = new ArrayList<>();
+		for (Terminal terminal : sentence) {
+			input.add(terminals.get(terminal.getName()));
+		}
+		input.add(Terminal.EOF);
+
+		Deque<State> stack = new ArrayDeque<>();
+		stack.push(definition.getStates().get(0));
+		int position = 0;
+		while (true) {
+			Action action = definition.getActionTable().get(stack.peek(), input.get(position));
+			if (action == null) {
+				return false;
+			}
+			switch (action.getActionType()) {
+				case SHIFT:
+					stack.push(action.getState());
+					position++;
+					break;
+				case REDUCE:
+					if (!action.getProduction().getRhs().contains(Terminal.EPSILON)) {
+						for (int i = 0; i < action.getProduction().getRhs().size(); i++) {
+							stack.pop();
+						}
+					}
+					stack.push(definition.getGotoTable().get(stack.peek(), action.getProduction().getLhs()));
+					break;
+				default:
+					return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the sentence in which a random token is inserted, removed or replaced.
+	 */
+	private static List<Terminal> mutate(List<Terminal> sentence, Random random, List<Terminal> terminals) {
+		List<Terminal> mutatedSentence = new ArrayList<>(sentence);
+		int position = random.nextInt(mutatedSentence.size() + 1);
+		switch (mutatedSentence.isEmpty() ? 0 : random.nextInt(3)) {
+			case 0:
+				mutatedSentence.add(position, terminals.get(random.nextInt(terminals.size())));
+				break;
+			case 1:
+				mutatedSentence.remove(Math.min(position, mutatedSentence.size() - 1));
+				break;
+			default:
+				mutatedSentence.set(Math.min(position, mutatedSentence.size() - 1),
+						terminals.get(random.nextInt(terminals.size())));
+				break;
+		}
+		return mutatedSentence;
+	}
+}
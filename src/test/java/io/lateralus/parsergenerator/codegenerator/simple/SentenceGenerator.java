@@ -0,0 +1,94 @@
+package io.lateralus.parsergenerator.codegenerator.simple;
+
+import io.lateralus.parsergenerator.core.Grammar;
+import io.lateralus.parsergenerator.core.NonTerminal;
+import io.lateralus.parsergenerator.core.Production;
+import io.lateralus.parsergenerator.core.Symbol;
+import io.lateralus.parsergenerator.core.Terminal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates random sentences of a grammar. Every non-terminal is expanded with a random production until the sentence
+ * has grown to the requested size; from then on with a production of which the derivation tree is as low as possible,
+ * so that the sentence is finished quickly.
+ */
+final class SentenceGenerator {
+
+	private final Grammar grammar;
+	private final Random random;
+	private final Map<NonTerminal, Integer> heights = new HashMap<>();
+
+	SentenceGenerator(Grammar grammar, long seed) {
+		this.grammar = grammar;
+		this.random = new Random(seed);
+		calculateHeights();
+	}
+
+	/**
+	 * Calculates the height of the lowest derivation tree of every non-terminal as a fixpoint.
+	 */
+	private void calculateHeights() {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Production production : grammar.getProductions()) {
+				int height = height(production);
+				Integer current = heights.get(production.getLhs());
+				if (height != Integer.MAX_VALUE && (current == null || height < current)) {
+					heights.put(production.getLhs(), height);
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private int height(Production production) {
+		int height = 0;
+		for (Symbol symbol : production.getRhs()) {
+			if (!symbol.isTerminal()) {
+				Integer symbolHeight = heights.get((NonTerminal)symbol);
+				if (symbolHeight == null) {
+					return Integer.MAX_VALUE;
+				}
+				height = Math.max(height, symbolHeight);
+			}
+		}
+		return height + 1;
+	}
+
+	/**
+	 * Generates a sentence of (roughly) at least the given number of terminals.
+	 */
+	List<Terminal> generate(int size) {
+		List<Terminal> sentence = new ArrayList<>();
+		expand(grammar.getSentenceSymbol(), size, sentence);
+		return sentence;
+	}
+
+	private void expand(NonTerminal nonTerminal, int size, List<Terminal> sentence) {
+		List<Production> productions = new ArrayList<>(grammar.getProductions(nonTerminal));
+		productions.sort(Comparator.comparingInt(Production::getId));
+		Production production;
+		if (sentence.size() < size) {
+			production = productions.get(random.nextInt(productions.size()));
+		} else {
+			production = productions.stream().min(Comparator.comparingInt(this::height)).orElseThrow();
+		}
+		for (Symbol symbol : production.getRhs()) {
+			if (symbol == Terminal.EPSILON) {
+				continue;
+			}
+			if (symbol.isTerminal()) {
+				sentence.add((Terminal)symbol);
+			} else {
+				expand((NonTerminal)symbol, size, sentence);
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package io.lateralus.parsergenerator.core;
+
+import io.lateralus.parsergenerator.core.definition.ParserDefinition;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Gives the tests access to the grammars of the benchmark corpus (benchmarks/src/main/resources/grammars, which are
+ * test resources as well) and to the construction of their parser definitions.
+ */
+public final class CorpusGrammars {
+
+	/**
+	 * The names of the grammars, from small to "real world" sized.
+	 */
+	public static final List<String> NAMES = List.of("expression", "json", "sql", "java");
+
+	private CorpusGrammars() {
+	}
+
+	/**
+	 * Returns the text of the grammar with the given name.
+	 */
+	public static String getText(String name) {
+		String resourceName = "/grammars/" + name + ".grammar";
+		try (InputStream inputStream = CorpusGrammars.class.getResourceAsStream(resourceName)) {
+			if (inputStream == null) {
+				throw new IllegalStateException("The grammar " + resourceName + " is missing");
+			}
+			return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read the grammar " + resourceName, e);
+		}
+	}
+
+	/**
+	 * Returns the text of the grammar with the given name, with a production (to a new terminal) added to its last
+	 * non-terminal.
+	 */
+	public static String getEditedText(String name) {
+		String text = getText(name).strip();
+		String lastLine = text.substring(text.lastIndexOf('\n') + 1);
+		return text + "\n" + lastLine.substring(0, lastLine.indexOf("->")) + "-> EXTRA_TOKEN : Extra\n";
+	}
+
+	/**
+	 * Parses and builds the grammar with the given name.
+	 */
+	public static Grammar build(String name) throws GrammarParserException, GrammarException {
+		return GrammarParser.builderFrom(getText(name)).build();
+	}
+
+	/**
+	 * Returns the terminals of the grammar in the order in which the generated parser expects them; EOF followed by
+	 * the other terminals ordered by name.
+	 */
+	public static List<Terminal> orderedTerminals(Grammar grammar) {
+		List<Terminal> orderedTerminals = new ArrayList<>();
+		orderedTerminals.add(Terminal.EOF);
+		grammar.getTerminals().stream()
+				.filter(terminal -> terminal != Terminal.EOF && terminal != Terminal.EPSILON)
+				.sorted(Comparator.comparing(Symbol::getName))
+				.forEach(orderedTerminals::add);
+		return orderedTerminals;
+	}
+
+	/**
+	 * Creates the parser definition of the canonical LR(1) collection of the grammar, of which the unit productions
+	 * are eliminated.
+	 */
+	public static ParserDefinition createDefinition(Grammar grammar) {
+		return ParserBuilder.builder(grammar)
+				.eliminateUnitProductions(true)
+				.build()
+				.createParserDefinition(orderedTerminals(grammar));
+	}
+}
@@ -0,0 +1,291 @@
+package io.lateralus.parsergenerator.core;
+
+import io.lateralus.parsergenerator.core.ParserBuilder.Construction;
+import io.lateralus.parsergenerator.core.definition.ParserDefinition;
+import io.lateralus.parsergenerator.core.metrics.GenerationMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the collections of every construction with the canonical LR(1) collection of the corpus grammars. The
+ * parallel and incremental constructions must create the canonical collection itself (up to isomorphism), the LALR(1)
+ * and minimal constructions a collection of which every state is the merge of the canonical states with its core.
+ */
+class ParserBuilderTest {
+
+	static List<String> grammarNames() {
+		return CorpusGrammars.NAMES;
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void parallelConstructionCreatesTheCanonicalCollection(String grammarName) throws Exception {
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		Set<State> canonicalCollection = ParserBuilder.builder(grammar).build().createCollection();
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Set<State> collection = ParserBuilder.builder(grammar).pool(pool).build().createCollection();
+			assertIsomorphic(canonicalCollection, collection);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void parallelConstructionRecordsTheMetricsOfTheSequentialConstruction() throws Exception {
+		Grammar grammar = CorpusGrammars.build("sql");
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		GenerationMetrics metrics = new GenerationMetrics();
+		ParserBuilder.builder(grammar).metrics(metrics).build().createParserDefinition(orderedTerminals);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			GenerationMetrics parallelMetrics = new GenerationMetrics();
+			ParserBuilder.builder(grammar).pool(pool).metrics(parallelMetrics).build()
+					.createParserDefinition(orderedTerminals);
+
+			assertEquals(metrics.getStateCount(), parallelMetrics.getStateCount());
+			assertEquals(metrics.getInterningHitRate(), parallelMetrics.getInterningHitRate());
+			assertEquals(metrics.getActionTableDensity(), parallelMetrics.getActionTableDensity());
+			assertTrue(parallelMetrics.getPeakRetainedItems() > 0);
+			for (GenerationMetrics.Phase phase : List.of(GenerationMetrics.Phase.COLLECTION,
+					GenerationMetrics.Phase.ACTION_TABLE, GenerationMetrics.Phase.GOTO_TABLE)) {
+				assertTrue(parallelMetrics.getPhaseTime(phase).compareTo(Duration.ZERO) > 0, phase::toString);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void incrementalConstructionCreatesTheCanonicalCollection(String grammarName) throws Exception {
+		// The edit adds a production to the last non-terminal of the grammar, and is undone again.
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		Grammar editedGrammar = GrammarParser.builderFrom(CorpusGrammars.getEditedText(grammarName)).build();
+		Set<State> collection = ParserBuilder.builder(grammar).build().createCollection();
+		Set<State> editedCollection = ParserBuilder.builder(editedGrammar).build().createCollection();
+
+		assertIsomorphic(editedCollection, ParserBuilder.builder(editedGrammar)
+				.previousCollection(grammar, collection)
+				.build()
+				.createCollection());
+		assertIsomorphic(collection, ParserBuilder.builder(grammar)
+				.previousCollection(editedGrammar, editedCollection)
+				.build()
+				.createCollection());
+	}
+
+	@Test
+	void incrementalConstructionReusesTheStatesThatAreNotAffected() throws Exception {
+		// A new kind of statement only affects the states in which a statement can start.
+		Grammar grammar = CorpusGrammars.build("java");
+		Grammar editedGrammar = GrammarParser.builderFrom(CorpusGrammars.getText("java").strip()
+				+ "\nStatement -> DO Statement WHILE LEFT_PAREN Expression RIGHT_PAREN SEMICOLON : DoWhile\n").build();
+		Set<State> collection = ParserBuilder.builder(grammar).build().createCollection();
+
+		IncrementalCollectionBuilder builder = new IncrementalCollectionBuilder(grammar, collection, editedGrammar,
+				ChenxCloser.builder(editedGrammar).build());
+		assertIsomorphic(ParserBuilder.builder(editedGrammar).build().createCollection(), builder.build());
+		assertTrue(builder.getReusedStateCount() > 10 * builder.getClosedStateCount(),
+				() -> builder.getReusedStateCount() + " states were reused, " + builder.getClosedStateCount() + " closed");
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void lalrConstructionMergesTheCanonicalStatesWithTheSameCore(String grammarName) throws Exception {
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		Set<State> canonicalCollection = ParserBuilder.builder(grammar).build().createCollection();
+		Set<State> collection = ParserBuilder.builder(grammar).construction(Construction.LALR).build().createCollection();
+
+		Map<State, State> mapping = assertMerged(canonicalCollection, collection);
+		// The LALR(1) collection has exactly one state per core.
+		Set<Set<Core>> cores = new HashSet<>();
+		for (State state : canonicalCollection) {
+			cores.add(Core.of(state));
+		}
+		assertEquals(cores.size(), collection.size());
+		assertEquals(collection.size(), new HashSet<>(mapping.values()).size());
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void minimalConstructionMergesCanonicalStatesWithTheSameCore(String grammarName) throws Exception {
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		Set<State> canonicalCollection = ParserBuilder.builder(grammar).build().createCollection();
+		Set<State> collection = ParserBuilder.builder(grammar).construction(Construction.MINIMAL).build()
+				.createCollection();
+
+		assertMerged(canonicalCollection, collection);
+		// The minimal collection has no conflicts that the canonical collection does not have; all corpus grammars are
+		// LR(1), so building its action table succeeds.
+		assertNotNull(ParserBuilder.buildActionTable(collection));
+	}
+
+	@Test
+	void onlyTheCanonicalCollectionCanBeUpdated() throws Exception {
+		Grammar grammar = CorpusGrammars.build("expression");
+		Set<State> collection = ParserBuilder.builder(grammar).build().createCollection();
+
+		assertThrows(IllegalStateException.class, () -> ParserBuilder.builder(grammar)
+				.construction(Construction.LALR)
+				.previousCollection(grammar, collection)
+				.build());
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void eliminatesTheStatesThatOnlyReduceAUnitProduction(String grammarName) throws Exception {
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+
+		ParserDefinition definition = ParserBuilder.builder(grammar).build().createParserDefinition(orderedTerminals);
+		ParserDefinition eliminatedDefinition = ParserBuilder.builder(grammar)
+				.eliminateUnitProductions(true)
+				.build()
+				.createParserDefinition(orderedTerminals);
+
+		assertTrue(eliminatedDefinition.getStates().size() < definition.getStates().size());
+		for (State state : eliminatedDefinition.getStates()) {
+			Collection<Action> actions = eliminatedDefinition.getActionTable().row(state).values();
+			assertFalse(!actions.isEmpty()
+					&& actions.stream().allMatch(action -> action.getActionType() == ActionType.REDUCE
+							&& action.getProduction().isAbstract())
+					&& actions.stream().map(Action::getProduction).distinct().count() == 1,
+					() -> "The state " + state + " only reduces a unit production");
+		}
+	}
+
+	/**
+	 * Asserts that the collections are isomorphic; that the states that are reached by the same sequence of
+	 * transitions from the start states have the same kernel.
+	 */
+	private static void assertIsomorphic(Set<State> expected, Set<State> actual) {
+		Map<State, State> mapping = mapStates(expected, actual);
+		for (Map.Entry<State, State> entry : mapping.entrySet()) {
+			assertEquals(entry.getKey().getKernel(), entry.getValue().getKernel());
+		}
+		assertEquals(expected.size(), actual.size());
+		assertEquals(actual.size(), new HashSet<>(mapping.values()).size());
+	}
+
+	/**
+	 * Asserts that every state of the collection has the core of the canonical states that map to it, and the union of
+	 * their lookaheads.
+	 *
+	 * @return The state of the collection per canonical state
+	 */
+	private static Map<State, State> assertMerged(Set<State> canonicalCollection, Set<State> collection) {
+		Map<State, State> mapping = mapStates(canonicalCollection, collection);
+		Map<State, Map<Core, Set<Terminal>>> mergedLookaheads = new IdentityHashMap<>();
+		for (Map.Entry<State, State> entry : mapping.entrySet()) {
+			assertEquals(Core.of(entry.getKey()), Core.of(entry.getValue()));
+			Map<Core, Set<Terminal>> lookaheads = mergedLookaheads.computeIfAbsent(entry.getValue(), s -> new HashMap<>());
+			lookaheads(entry.getKey()).forEach((core, terminals) ->
+					lookaheads.computeIfAbsent(core, c -> new HashSet<>()).addAll(terminals));
+		}
+		assertEquals(collection.size(), mergedLookaheads.size());
+		mergedLookaheads.forEach((state, lookaheads) -> assertEquals(lookaheads, lookaheads(state)));
+		return mapping;
+	}
+
+	/**
+	 * Maps the states of the first collection to the states of the second one that are reached by the same sequence of
+	 * transitions from the start state, and asserts that the second collection has the same transitions.
+	 */
+	private static Map<State, State> mapStates(Set<State> from, Set<State> to) {
+		Map<State, State> mapping = new IdentityHashMap<>();
+		Deque<State> workList = new ArrayDeque<>();
+		State startState = findStartState(from);
+		mapping.put(startState, findStartState(to));
+		workList.push(startState);
+		while (!workList.isEmpty()) {
+			State state = workList.pop();
+			State mappedState = mapping.get(state);
+			assertEquals(state.getTransitions().keySet(), mappedState.getTransitions().keySet());
+			for (Map.Entry<Symbol, State> transition : state.getTransitions().entrySet()) {
+				State target = mappedState.getTransitions().get(transition.getKey());
+				State previousTarget = mapping.putIfAbsent(transition.getValue(), target);
+				if (previousTarget == null) {
+					workList.push(transition.getValue());
+				} else {
+					assertSame(previousTarget, target);
+				}
+			}
+		}
+		assertEquals(from.size(), mapping.size());
+		return mapping;
+	}
+
+	private static State findStartState(Set<State> collection) {
+		return collection.stream()
+				.filter(state -> state.getKernel().stream()
+						.anyMatch(item -> item.getProduction().getLhs() == NonTerminal.START && item.getPosition() == 0))
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private static Map<Core, Set<Terminal>> lookaheads(State state) {
+		Map<Core, Set<Terminal>> lookaheads = new HashMap<>();
+		for (Item item : state.getKernel()) {
+			lookaheads.computeIfAbsent(new Core(item), core -> new HashSet<>()).addAll(item.getLookahead());
+		}
+		return lookaheads;
+	}
+
+	/**
+	 * An item without its lookahead.
+	 */
+	private static final class Core {
+		private final Production production;
+		private final int position;
+
+		private Core(Item item) {
+			this.production = item.getProduction();
+			this.position = item.getPosition();
+		}
+
+		static Set<Core> of(State state) {
+			Set<Core> cores = new HashSet<>();
+			for (Item item : state.getKernel()) {
+				cores.add(new Core(item));
+			}
+			return cores;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Core)) {
+				return false;
+			}
+			Core that = (Core)o;
+			return position == that.position && production.equals(that.production);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * production.hashCode() + position;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package io.lateralus.parsergenerator.core.definition;
+
+import io.lateralus.parsergenerator.codegenerator.SourceFile;
+import io.lateralus.parsergenerator.codegenerator.simple.BasicParserCodeGenerator;
+import io.lateralus.parsergenerator.core.Action;
+import io.lateralus.parsergenerator.core.CorpusGrammars;
+import io.lateralus.parsergenerator.core.Grammar;
+import io.lateralus.parsergenerator.core.GrammarParser;
+import io.lateralus.parsergenerator.core.NonTerminal;
+import io.lateralus.parsergenerator.core.ParserBuilder;
+import io.lateralus.parsergenerator.core.ParserBuilder.Construction;
+import io.lateralus.parsergenerator.core.Production;
+import io.lateralus.parsergenerator.core.State;
+import io.lateralus.parsergenerator.core.Terminal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParserDefinitionCacheTest {
+
+	@TempDir
+	Path directory;
+
+	static List<String> grammarNames() {
+		return CorpusGrammars.NAMES;
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void loadsTheDefinitionThatWasBuilt(String grammarName) throws Exception {
+		ParserDefinitionCache cache = new ParserDefinitionCache(directory);
+		Grammar grammar = CorpusGrammars.build(grammarName);
+		ParserBuilder parserBuilder = ParserBuilder.builder(grammar)
+				.eliminateUnitProductions(true)
+				.cache(cache)
+				.build();
+		ParserDefinition builtDefinition = parserBuilder.createParserDefinition(CorpusGrammars.orderedTerminals(grammar));
+
+		// The definition is read back for a grammar that is built again from the same text.
+		Grammar loadedGrammar = CorpusGrammars.build(grammarName);
+		ParserDefinition loadedDefinition = cache.load(loadedGrammar, parserBuilder.getConfiguration(),
+				CorpusGrammars.orderedTerminals(loadedGrammar)).orElseThrow();
+
+		assertEquals(describe(builtDefinition), describe(loadedDefinition));
+		assertEquals(generate(builtDefinition), generate(loadedDefinition));
+	}
+
+	@Test
+	void configurationIsDerivedFromTheConstructionAndTheEliminationOfUnitProductions() throws Exception {
+		ParserDefinitionCache cache = new ParserDefinitionCache(directory);
+		Grammar grammar = CorpusGrammars.build("expression");
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+
+		List<String> configurations = new ArrayList<>();
+		for (Construction construction : Construction.values()) {
+			for (boolean eliminateUnitProductions : new boolean[] { false, true }) {
+				ParserBuilder parserBuilder = ParserBuilder.builder(grammar)
+						.construction(construction)
+						.eliminateUnitProductions(eliminateUnitProductions)
+						.cache(cache)
+						.build();
+				assertTrue(cache.load(grammar, parserBuilder.getConfiguration(), orderedTerminals).isEmpty(),
+						() -> "A definition with another configuration is loaded for " + parserBuilder.getConfiguration());
+				parserBuilder.createParserDefinition(orderedTerminals);
+				configurations.add(parserBuilder.getConfiguration());
+			}
+		}
+
+		assertEquals(configurations.size(), configurations.stream().distinct().count());
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(configurations.size(), files.count());
+		}
+	}
+
+	@Test
+	void definitionOfAnEditedGrammarIsNotLoaded() throws Exception {
+		ParserDefinitionCache cache = new ParserDefinitionCache(directory);
+		Grammar grammar = CorpusGrammars.build("expression");
+		ParserBuilder parserBuilder = ParserBuilder.builder(grammar).cache(cache).build();
+		parserBuilder.createParserDefinition(CorpusGrammars.orderedTerminals(grammar));
+
+		Grammar editedGrammar = GrammarParser.builderFrom(CorpusGrammars.getEditedText("expression")).build();
+
+		assertTrue(cache.load(editedGrammar, parserBuilder.getConfiguration(),
+				CorpusGrammars.orderedTerminals(editedGrammar)).isEmpty());
+	}
+
+	@Test
+	void unreadableDefinitionIsBuiltAgain() throws Exception {
+		ParserDefinitionCache cache = new ParserDefinitionCache(directory);
+		Grammar grammar = CorpusGrammars.build("json");
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		ParserBuilder parserBuilder = ParserBuilder.builder(grammar).cache(cache).build();
+		ParserDefinition builtDefinition = parserBuilder.createParserDefinition(orderedTerminals);
+
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>)files::iterator) {
+				Files.write(file, new byte[] { 1, 2, 3 });
+			}
+		}
+
+		assertTrue(cache.load(grammar, parserBuilder.getConfiguration(), orderedTerminals).isEmpty());
+		ParserDefinition rebuiltDefinition = parserBuilder.createParserDefinition(orderedTerminals);
+		assertEquals(describe(builtDefinition), describe(rebuiltDefinition));
+		assertTrue(cache.load(grammar, parserBuilder.getConfiguration(), orderedTerminals).isPresent());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { -1, Integer.MAX_VALUE, 1_000_000 })
+	void definitionWithACorruptStateCountIsBuiltAgain(int stateCount) throws Exception {
+		ParserDefinitionCache cache = new ParserDefinitionCache(directory);
+		Grammar grammar = CorpusGrammars.build("json");
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		ParserBuilder parserBuilder = ParserBuilder.builder(grammar).cache(cache).build();
+		ParserDefinition builtDefinition = parserBuilder.createParserDefinition(orderedTerminals);
+
+		// The header stays valid and the checksum is updated, so only the decoding can detect the corrupt count. The
+		// header is the magic, the version, the key and the sizes of the grammar, which are followed by the state count.
+		Path file = onlyFile();
+		byte[] bytes = Files.readAllBytes(file);
+		int keyLength = (bytes[5] & 0xFF) << 8 | bytes[6] & 0xFF;
+		int stateCountStart = skipVarInts(bytes, Integer.BYTES + 1 + Short.BYTES + keyLength, 3);
+		int stateCountEnd = skipVarInts(bytes, stateCountStart, 1);
+
+		ByteArrayOutputStream corrupted = new ByteArrayOutputStream();
+		corrupted.write(bytes, 0, stateCountStart);
+		int value = stateCount;
+		while ((value & ~0x7F) != 0) {
+			corrupted.write(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		corrupted.write(value);
+		corrupted.write(bytes, stateCountEnd, bytes.length - Integer.BYTES - stateCountEnd);
+		CRC32 checksum = new CRC32();
+		checksum.update(corrupted.toByteArray());
+		corrupted.write(ByteBuffer.allocate(Integer.BYTES).putInt((int)checksum.getValue()).array());
+		Files.write(file, corrupted.toByteArray());
+
+		assertTrue(cache.load(grammar, parserBuilder.getConfiguration(), orderedTerminals).isEmpty());
+		assertEquals(describe(builtDefinition), describe(parserBuilder.createParserDefinition(orderedTerminals)));
+	}
+
+	@Test
+	void definitionWithACorruptBodyIsBuiltAgain() throws Exception {
+		ParserDefinitionCache cache = new ParserDefinitionCache(directory);
+		Grammar grammar = CorpusGrammars.build("json");
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+		ParserBuilder parserBuilder = ParserBuilder.builder(grammar).cache(cache).build();
+		parserBuilder.createParserDefinition(orderedTerminals);
+
+		Path file = onlyFile();
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= (byte)0xFF;
+		Files.write(file, bytes);
+
+		assertTrue(cache.load(grammar, parserBuilder.getConfiguration(), orderedTerminals).isEmpty());
+	}
+
+	@Test
+	void definitionIsReturnedWhenItCanNotBeStored() throws Exception {
+		// The cache directory is a file, so the definition can not be stored.
+		Path file = Files.createFile(directory.resolve("file"));
+		ParserDefinitionCache cache = new ParserDefinitionCache(file);
+		Grammar grammar = CorpusGrammars.build("json");
+		List<Terminal> orderedTerminals = CorpusGrammars.orderedTerminals(grammar);
+
+		ParserDefinition definition = ParserBuilder.builder(grammar).cache(cache).build()
+				.createParserDefinition(orderedTerminals);
+
+		assertEquals(describe(ParserBuilder.builder(grammar).build().createParserDefinition(orderedTerminals)),
+				describe(definition));
+	}
+
+	private static int skipVarInts(byte[] bytes, int offset, int count) {
+		for (int i = 0; i < count; i++) {
+			while ((bytes[offset++] & 0x80) != 0) {
+				// The high bit is set on all bytes of a var int but the last.
+			}
+		}
+		return offset;
+	}
+
+	private Path onlyFile() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			List<Path> paths = files.collect(Collectors.toList());
+			assertEquals(1, paths.size());
+			return paths.get(0);
+		}
+	}
+
+	/**
+	 * Describes the parse tables by state number, so that the tables of two definitions can be compared.
+	 */
+	private static List<String> describe(ParserDefinition definition) {
+		List<String> rows = new ArrayList<>();
+		for (State state : definition.getStates()) {
+			Map<String, String> row = new TreeMap<>();
+			definition.getActionTable().row(state).forEach((terminal, action) ->
+					row.put(terminal.getName(), describe(definition, action)));
+			for (Map.Entry<NonTerminal, State> entry : definition.getGotoTable().row(state).entrySet()) {
+				row.put(entry.getKey().getName(), "goto " + definition.getStateNumber(entry.getValue()));
+			}
+			Production defaultReduction = definition.getDefaultReduction(state);
+			rows.add(definition.getStateNumber(state) + " " + row
+					+ (defaultReduction == null ? "" : " default " + defaultReduction.getId()));
+		}
+		return rows;
+	}
+
+	private static String describe(ParserDefinition definition, Action action) {
+		switch (action.getActionType()) {
+			case SHIFT:
+				return "shift " + definition.getStateNumber(action.getState());
+			case REDUCE:
+				return "reduce " + action.getProduction().getId();
+			default:
+				return action.getActionType().toString();
+		}
+	}
+
+	private static Map<String, String> generate(ParserDefinition definition) throws Exception {
+		BasicParserCodeGenerator codeGenerator = new BasicParserCodeGenerator();
+		codeGenerator.setProperties(new BasicParserCodeGenerator.Properties("Test", "test.parser", "test.lexer", true));
+		Map<String, String> sources = new HashMap<>();
+		for (SourceFile<String> sourceFile : codeGenerator.generate(definition)) {
+			sources.put(sourceFile.getName(), sourceFile.getContents());
+		}
+		return sources;
+	}
+}
@@ -0,0 +1,46 @@
+package io.lateralus.parsergenerator.core.definition;
+
+import io.lateralus.parsergenerator.core.Action;
+import io.lateralus.parsergenerator.core.ActionType;
+import io.lateralus.parsergenerator.core.CorpusGrammars;
+import io.lateralus.parsergenerator.core.Production;
+import io.lateralus.parsergenerator.core.State;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParserDefinitionTest {
+
+	static List<String> grammarNames() {
+		return CorpusGrammars.NAMES;
+	}
+
+	@ParameterizedTest
+	@MethodSource("grammarNames")
+	void defaultReductionIsTheOnlyActionOfAConsistentState(String grammarName) throws Exception {
+		ParserDefinition definition = CorpusGrammars.createDefinition(CorpusGrammars.build(grammarName));
+
+		int consistentStateCount = 0;
+		for (State state : definition.getStates()) {
+			Collection<Action> actions = definition.getActionTable().row(state).values();
+			boolean consistent = !actions.isEmpty() && actions.stream()
+					.allMatch(action -> action.getActionType() == ActionType.REDUCE)
+					&& actions.stream().map(Action::getProduction).distinct().count() == 1;
+
+			Production defaultReduction = definition.getDefaultReduction(state);
+			assertEquals(consistent, defaultReduction != null, () -> "The state " + state + " is consistent");
+			if (consistent) {
+				assertEquals(actions.iterator().next().getProduction(), defaultReduction);
+				consistentStateCount++;
+			}
+		}
+		// Every grammar has states that only reduce, e.g. after the last symbol of a production that is never followed
+		// by a longer alternative.
+		assertTrue(consistentStateCount > 0);
+	}
+}
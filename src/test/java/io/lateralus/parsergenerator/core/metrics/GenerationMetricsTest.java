@@ -0,0 +1,48 @@
+package io.lateralus.parsergenerator.core.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationMetricsTest {
+
+	@Test
+	void timesTheWorkOfAPhase() throws InterruptedException {
+		GenerationMetrics metrics = new GenerationMetrics();
+
+		String result = metrics.time(GenerationMetrics.Phase.COLLECTION, () -> {
+			Thread.sleep(5);
+			return "done";
+		});
+
+		assertEquals("done", result);
+		assertTrue(metrics.getPhaseTime(GenerationMetrics.Phase.COLLECTION).compareTo(Duration.ofMillis(5)) >= 0);
+		assertEquals(Duration.ZERO, metrics.getPhaseTime(GenerationMetrics.Phase.GOTO_TABLE));
+	}
+
+	@Test
+	void timesAPhaseThatThrows() {
+		GenerationMetrics metrics = new GenerationMetrics();
+
+		assertThrows(IOException.class, () -> metrics.time(GenerationMetrics.Phase.CODE_GENERATION, () -> {
+			Thread.sleep(5);
+			throw new IOException();
+		}));
+
+		assertTrue(metrics.getPhaseTime(GenerationMetrics.Phase.CODE_GENERATION).compareTo(Duration.ofMillis(5)) >= 0);
+	}
+
+	@Test
+	void disabledMetricsRecordNothing() {
+		GenerationMetrics metrics = GenerationMetrics.disabled();
+
+		assertEquals(42, (int)metrics.time(GenerationMetrics.Phase.CLOSER, () -> 42));
+
+		assertEquals(Duration.ZERO, metrics.getPhaseTime(GenerationMetrics.Phase.CLOSER));
+	}
+}